@@ -0,0 +1,31 @@
+package ru.metlife.integration.benchmark;
+
+import static ru.metlife.integration.benchmark.WorkbookGenerator.DICTIONARY_HEADER_ROW;
+import static ru.metlife.integration.benchmark.WorkbookGenerator.DICTIONARY_SHEET;
+import static ru.metlife.integration.benchmark.WorkbookGenerator.ORDER_HEADER_ROW;
+import static ru.metlife.integration.benchmark.WorkbookGenerator.ORDER_SHEET;
+
+import java.nio.file.Path;
+import ru.metlife.integration.service.xssf.DictionaryRowContentCallback;
+import ru.metlife.integration.service.xssf.XlsService;
+import ru.metlife.integration.service.xssf.XlsService.SheetData;
+
+/**
+ * Reads generated workbooks fully into memory for benchmarks that start after parsing.
+ */
+public final class BenchmarkWorkbooks {
+
+  private BenchmarkWorkbooks() {
+  }
+
+  public static SheetData readOrders(Path workbook) {
+    return new XlsService(workbook.toString())
+        .processSheet(ORDER_SHEET, 0, ORDER_HEADER_ROW, new DictionaryRowContentCallback());
+  }
+
+  public static SheetData readDictionary(Path workbook) {
+    return new XlsService(workbook.toString())
+        .processSheet(DICTIONARY_SHEET, 0, DICTIONARY_HEADER_ROW,
+            new DictionaryRowContentCallback());
+  }
+}
@@ -0,0 +1,142 @@
+package ru.metlife.integration.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.metlife.integration.Application;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.config.ExportSourcesProperties;
+import ru.metlife.integration.service.DeliveryStatusSynchronizer;
+import ru.metlife.integration.service.DocumentExportService;
+import ru.metlife.integration.service.JobCheckpointService;
+
+/**
+ * End-to-end load test: generates a workbook, starts the application against an in-memory H2
+ * database in SQL Server mode and runs the export and the delivery status sync on it. Prints
+ * throughput and peak heap for every stage.
+ *
+ * <p>Sized with system properties {@code load.rows}, {@code load.dealerships},
+ * {@code load.recipients}, {@code load.duplicates} and {@code load.persist-workers}; see the
+ * jmh profile in the pom.
+ *
+ * <p>Peak heap is the sum of the peaks of all heap pools during the stage, an upper bound of
+ * what the stage needed at once.
+ */
+public class ExportLoadRunner {
+
+  private static final String EXPORT_JOB =
+      "exportDocument:" + ExportSourcesProperties.DEFAULT_SOURCE;
+  private static final String NEVER = "0 0 0 1 1 ?";
+
+  private final List<String> report = new ArrayList<>();
+
+  public static void main(String[] args) throws Exception {
+    new ExportLoadRunner().run(
+        Integer.getInteger("load.rows", 100000),
+        Integer.getInteger("load.dealerships", 200),
+        Integer.getInteger("load.recipients", 3),
+        Double.parseDouble(System.getProperty("load.duplicates", "0.05")),
+        Integer.getInteger("load.persist-workers", 4));
+  }
+
+  void run(int rows, int dealerships, int recipients, double duplicates, int persistWorkers)
+      throws Exception {
+    Path stagingDir = Files.createTempDirectory("fi-cong-load-staging");
+    Path workbook = stage("generate workbook", rows,
+        () -> new WorkbookGenerator(rows, dealerships, recipients, duplicates).generateTemp());
+
+    try (ConfigurableApplicationContext context = start(workbook, stagingDir, persistWorkers)) {
+      DocumentExportService documentExportService = context.getBean(DocumentExportService.class);
+      DeliveryStatusSynchronizer deliveryStatusSynchronizer = context
+          .getBean(DeliveryStatusSynchronizer.class);
+      JobCheckpointService jobCheckpointService = context.getBean(JobCheckpointService.class);
+      JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+      ExportSource source = context.getBean(ExportSourcesProperties.class).getExportSources()
+          .get(0);
+
+      stage("export", rows, () -> {
+        documentExportService.exportDocument(source);
+        return null;
+      });
+      int letters = count(jdbcTemplate, "orders");
+      if (letters == 0) {
+        throw new IllegalStateException("nothing was exported, see the log above");
+      }
+
+      jobCheckpointService.clear(EXPORT_JOB);
+      stage("re-export, all rows known", rows, () -> {
+        documentExportService.exportDocument(source);
+        return null;
+      });
+      if (count(jdbcTemplate, "orders") != letters) {
+        throw new IllegalStateException("re-export wrote orders again");
+      }
+
+      // about 70% of the letters delivered, the rest still in flight
+      jdbcTemplate.update("update orders set delivery_status = case"
+          + " when right(order_id, 1) < 'b' then 'COMPLETED' else 'SENT' end");
+      int[] updated = new int[1];
+      stage("status sync", letters, () -> {
+        updated[0] = deliveryStatusSynchronizer.synchronize();
+        return null;
+      });
+
+      report.add(String.format("%d order rows, %d letters, %d delivery statuses updated",
+          rows, letters, updated[0]));
+    }
+    report.forEach(System.out::println);
+  }
+
+  private ConfigurableApplicationContext start(Path workbook, Path stagingDir,
+      int persistWorkers) {
+    SpringApplication application = new SpringApplication(Application.class);
+    application.setWebEnvironment(false);
+    return application.run(
+        "--spring.datasource.url=jdbc:h2:mem:load;MODE=MSSQLServer;DB_CLOSE_DELAY=-1",
+        "--spring.datasource.driverClassName=org.h2.Driver",
+        "--spring.datasource.username=sa",
+        "--spring.datasource.schema=classpath:load-test/schema.sql",
+        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "--fi-cong-integration.doc-file-path=" + workbook,
+        "--fi-cong-integration.staging-dir=" + stagingDir,
+        "--fi-cong-integration.persist-workers=" + persistWorkers,
+        "--fi-cong-integration.status-sync-mode=BATCHED",
+        "--fi-cong-integration.status-sync-incremental=false",
+        "--fi-cong-integration.export-order-cron=" + NEVER,
+        "--fi-cong-integration.update-delivery-status-cron=" + NEVER,
+        "--fi-cong-integration.full-status-sync-cron=" + NEVER);
+  }
+
+  private <T> T stage(String name, int rows, Callable<T> stage) throws Exception {
+    System.gc();
+    List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+        heapPools.add(pool);
+      }
+    }
+    long started = System.nanoTime();
+    T result = stage.call();
+    double seconds = (System.nanoTime() - started) / 1e9;
+    long peakHeap = 0;
+    for (MemoryPoolMXBean pool : heapPools) {
+      peakHeap += pool.getPeakUsage().getUsed();
+    }
+    report.add(String.format("%-28s %10d rows %9.2f s %12.0f rows/s %8d MB peak heap",
+        name, rows, seconds, rows / seconds, peakHeap >> 20));
+    return result;
+  }
+
+  private int count(JdbcTemplate jdbcTemplate, String table) {
+    return jdbcTemplate.queryForObject("select count(*) from " + table, Integer.class);
+  }
+}
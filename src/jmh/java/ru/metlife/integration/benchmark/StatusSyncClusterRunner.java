@@ -0,0 +1,133 @@
+package ru.metlife.integration.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.metlife.integration.Application;
+import ru.metlife.integration.service.ClusterMembershipService;
+import ru.metlife.integration.service.DocumentExportService;
+
+/**
+ * Partitioned delivery status sync on several in-process nodes sharing one embedded database.
+ * Fills the backlog, syncs it on all nodes at once, stops one node and syncs a changed backlog
+ * on the rest. Every round checks that no delivery status is left behind and prints the rows
+ * and partitions of every node.
+ *
+ * <p>Sized with system properties {@code cluster.nodes}, {@code cluster.partitions} and
+ * {@code cluster.rows}; see the jmh profile in the pom.
+ */
+public class StatusSyncClusterRunner {
+
+  private static final String NEVER = "0 0 0 1 1 ?";
+  private static final String DATASOURCE_URL =
+      "jdbc:h2:mem:cluster;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+  private static final String STATUS_DIFFERS_SQL = ""
+      + "select count(*) from delivery_data d join orders o on o.order_id = d.order_id"
+      + " where (d.delivery_status is null or d.delivery_status <> 'COMPLETED')"
+      + " and coalesce(d.delivery_status, '') <> coalesce(o.delivery_status, '')";
+
+  private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+  public static void main(String[] args) throws Exception {
+    new StatusSyncClusterRunner().run(
+        Integer.getInteger("cluster.nodes", 3),
+        Integer.getInteger("cluster.partitions", 16),
+        Integer.getInteger("cluster.rows", 100000));
+  }
+
+  void run(int nodeCount, int partitions, int rows) throws Exception {
+    try {
+      for (int i = 1; i <= nodeCount; i++) {
+        nodes.add(start("node-" + i, partitions, i == 1));
+      }
+      JdbcTemplate jdbcTemplate = nodes.get(0).getBean(JdbcTemplate.class);
+      fill(jdbcTemplate, rows);
+
+      round("all nodes", jdbcTemplate);
+
+      nodes.remove(nodes.size() - 1).close();
+      jdbcTemplate.update("update orders set delivery_status = 'READ'"
+          + " where delivery_status = 'SENT'");
+      round("one node left", jdbcTemplate);
+    } finally {
+      nodes.forEach(ConfigurableApplicationContext::close);
+    }
+  }
+
+  private ConfigurableApplicationContext start(String nodeId, int partitions,
+      boolean createSchema) {
+    SpringApplication application = new SpringApplication(Application.class);
+    application.setWebEnvironment(false);
+    return application.run(
+        "--spring.datasource.url=" + DATASOURCE_URL,
+        "--spring.datasource.driverClassName=org.h2.Driver",
+        "--spring.datasource.username=sa",
+        "--spring.datasource.schema=classpath:load-test/schema.sql",
+        "--spring.datasource.initialize=" + createSchema,
+        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "--spring.jmx.enabled=false",
+        "--fi-cong-integration.node-id=" + nodeId,
+        "--fi-cong-integration.status-sync-partitions=" + partitions,
+        "--fi-cong-integration.status-sync-mode=BATCHED",
+        "--fi-cong-integration.status-sync-incremental=false",
+        "--fi-cong-integration.export-order-cron=" + NEVER,
+        "--fi-cong-integration.update-delivery-status-cron=" + NEVER,
+        "--fi-cong-integration.full-status-sync-cron=" + NEVER);
+  }
+
+  private void fill(JdbcTemplate jdbcTemplate, int rows) {
+    Random random = new Random(42);
+    String[] statuses = {"SENT", "SENT", "COMPLETED", null};
+    List<Object[]> orders = new ArrayList<>();
+    List<Object[]> deliveryData = new ArrayList<>();
+    for (int i = 0; i < rows; i++) {
+      String orderId = UUID.randomUUID().toString();
+      orders.add(new Object[]{orderId, statuses[random.nextInt(statuses.length)]});
+      deliveryData.add(new Object[]{UUID.randomUUID().toString(), orderId});
+    }
+    jdbcTemplate.batchUpdate(
+        "insert into orders (order_id, status, delivery_status) values (?, 0, ?)", orders);
+    jdbcTemplate.batchUpdate("insert into delivery_data (id, order_id) values (?, ?)",
+        deliveryData);
+  }
+
+  private void round(String name, JdbcTemplate jdbcTemplate) throws Exception {
+    int backlog = jdbcTemplate.queryForObject(STATUS_DIFFERS_SQL, Integer.class);
+    for (ConfigurableApplicationContext node : nodes) {
+      node.getBean(ClusterMembershipService.class).heartbeat();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+    List<Future<Integer>> updated = new ArrayList<>();
+    long started = System.nanoTime();
+    try {
+      for (ConfigurableApplicationContext node : nodes) {
+        updated.add(executor.submit(
+            () -> node.getBean(DocumentExportService.class).updateDeliveryStatus()));
+      }
+      int total = 0;
+      for (Future<Integer> nodeUpdated : updated) {
+        total += nodeUpdated.get();
+      }
+      double seconds = (System.nanoTime() - started) / 1e9;
+      System.out.printf("%-14s %d nodes, %d of %d rows synced in %.2f s, %.0f rows/s%n",
+          name, nodes.size(), total, backlog, seconds, total / seconds);
+      for (int i = 0; i < nodes.size(); i++) {
+        System.out.printf("  node %d: %d rows, partitions %s%n", i + 1, updated.get(i).get(),
+            nodes.get(i).getBean(ClusterMembershipService.class).getOwnedPartitions());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    int left = jdbcTemplate.queryForObject(STATUS_DIFFERS_SQL, Integer.class);
+    if (left > 0) {
+      throw new IllegalStateException(left + " delivery statuses left behind");
+    }
+  }
+}
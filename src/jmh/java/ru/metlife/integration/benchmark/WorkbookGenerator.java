@@ -0,0 +1,165 @@
+package ru.metlife.integration.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Writes registration workbooks of arbitrary size with the layout of the real one: an order
+ * sheet with its header in the first row and a dictionary sheet with its header in the fourth.
+ * Rows are streamed with SXSSF, so generating half a million rows needs little heap. Content is
+ * deterministic for a given set of parameters.
+ *
+ * <p>Can be run on its own to produce a file:
+ * {@code WorkbookGenerator <file> <orderRows> [dealerships] [recipientsPerDealership]
+ * [duplicateRatio]}.
+ */
+public class WorkbookGenerator {
+
+  public static final String ORDER_SHEET = "Общая";
+  public static final int ORDER_HEADER_ROW = 0;
+  public static final String DICTIONARY_SHEET = "Справочник";
+  public static final int DICTIONARY_HEADER_ROW = 3;
+
+  private static final String[] ORDER_HEADER = {"order_id", "delivery_status", "№ п/п",
+      "Номер сертификата", "ФИО", "Комментарии", "Тип документа", "e-mail", "e-mail копия",
+      "Дилерский центр", "Партнер", "Region"};
+  private static final String[] DICTIONARY_HEADER = {"№", "Партнер", "Дилерский центр",
+      "Регион", "e-mail", "e-mail копия"};
+  private static final String[] DOC_TYPES = {"Сертификат", "Заявление", "Полис"};
+  private static final int PARTNERS = 10;
+  private static final int REGIONS = 7;
+  private static final int ROWS_IN_MEMORY = 100;
+  private static final long SEED = 42;
+
+  private final int orderRows;
+  private final int dealerships;
+  private final int recipientsPerDealership;
+  private final double duplicateRatio;
+
+  public WorkbookGenerator(int orderRows, int dealerships, int recipientsPerDealership) {
+    this(orderRows, dealerships, recipientsPerDealership, 0);
+  }
+
+  /**
+   * @param dealerships number of dictionary entries; order rows are spread evenly over them
+   * @param recipientsPerDealership main e-mails per dictionary entry, each entry also has a copy
+   * recipient
+   * @param duplicateRatio share of order rows that repeat an earlier row cell by cell
+   */
+  public WorkbookGenerator(int orderRows, int dealerships, int recipientsPerDealership,
+      double duplicateRatio) {
+    this.orderRows = orderRows;
+    this.dealerships = dealerships;
+    this.recipientsPerDealership = recipientsPerDealership;
+    this.duplicateRatio = duplicateRatio;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("usage: WorkbookGenerator <file> <orderRows> [dealerships]"
+          + " [recipientsPerDealership] [duplicateRatio]");
+      System.exit(1);
+    }
+    WorkbookGenerator generator = new WorkbookGenerator(Integer.parseInt(args[1]),
+        args.length > 2 ? Integer.parseInt(args[2]) : 200,
+        args.length > 3 ? Integer.parseInt(args[3]) : 3,
+        args.length > 4 ? Double.parseDouble(args[4]) : 0);
+    System.out.println(generator.generate(Paths.get(args[0])));
+  }
+
+  /**
+   * Generates the workbook into a temporary file that is deleted on exit.
+   */
+  public Path generateTemp() throws IOException {
+    Path file = Files.createTempFile("registration-" + orderRows + "-", ".xlsx");
+    file.toFile().deleteOnExit();
+    return generate(file);
+  }
+
+  public Path generate(Path file) throws IOException {
+    SXSSFWorkbook workbook = new SXSSFWorkbook(null, ROWS_IN_MEMORY, true, true);
+    try (OutputStream out = Files.newOutputStream(file)) {
+      writeOrders(workbook.createSheet(ORDER_SHEET));
+      writeDictionary(workbook.createSheet(DICTIONARY_SHEET));
+      workbook.write(out);
+    } finally {
+      workbook.dispose();
+      workbook.close();
+    }
+    return file;
+  }
+
+  private void writeOrders(Sheet sheet) {
+    Random random = new Random(SEED);
+    writeRow(sheet.createRow(ORDER_HEADER_ROW), ORDER_HEADER);
+    for (int i = 1; i <= orderRows; i++) {
+      int source = i > 1 && random.nextDouble() < duplicateRatio ? 1 + random.nextInt(i - 1) : i;
+      writeRow(sheet.createRow(ORDER_HEADER_ROW + i), orderRow(source));
+    }
+  }
+
+  private String[] orderRow(int i) {
+    int dealership = i % dealerships;
+    return new String[]{
+        null,
+        null,
+        String.valueOf(i),
+        "CERT-" + (1000000 + i),
+        "Клиент Номер " + i,
+        i % 5 == 0 ? "повторная отправка" : null,
+        DOC_TYPES[i % DOC_TYPES.length],
+        "client" + i + "@example.com",
+        null,
+        dealershipName(dealership),
+        partnerName(dealership),
+        regionName(dealership)};
+  }
+
+  private void writeDictionary(Sheet sheet) {
+    writeRow(sheet.createRow(0), new String[]{"Справочник получателей"});
+    writeRow(sheet.createRow(DICTIONARY_HEADER_ROW), DICTIONARY_HEADER);
+    for (int d = 0; d < dealerships; d++) {
+      StringBuilder emails = new StringBuilder();
+      for (int r = 0; r < recipientsPerDealership; r++) {
+        if (r > 0) {
+          emails.append("; ");
+        }
+        emails.append("dc").append(d).append('-').append(r).append("@example.com");
+      }
+      writeRow(sheet.createRow(DICTIONARY_HEADER_ROW + 1 + d), new String[]{
+          String.valueOf(d + 1),
+          partnerName(d),
+          dealershipName(d),
+          regionName(d),
+          emails.toString(),
+          "Копия ДЦ " + d + " <cc" + d + "@example.com>"});
+    }
+  }
+
+  private void writeRow(Row row, String[] values) {
+    for (int column = 0; column < values.length; column++) {
+      if (values[column] != null) {
+        row.createCell(column).setCellValue(values[column]);
+      }
+    }
+  }
+
+  private static String dealershipName(int dealership) {
+    return "ДЦ " + dealership;
+  }
+
+  private static String partnerName(int dealership) {
+    return "Партнер " + dealership % PARTNERS;
+  }
+
+  private static String regionName(int dealership) {
+    return "Регион " + dealership % REGIONS;
+  }
+}
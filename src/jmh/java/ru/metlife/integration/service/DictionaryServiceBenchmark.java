@@ -0,0 +1,70 @@
+package ru.metlife.integration.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.metlife.integration.benchmark.BenchmarkWorkbooks;
+import ru.metlife.integration.benchmark.WorkbookGenerator;
+import ru.metlife.integration.dto.RecipientDto;
+import ru.metlife.integration.service.xssf.XlsService.SheetData;
+
+/**
+ * Recipient lookup by region, partner and dealership as written in the order sheet, and the
+ * index build it relies on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DictionaryServiceBenchmark {
+
+  @Param({"2000"})
+  private int dealerships;
+
+  private DictionaryService dictionaryService;
+  private SheetData dictionarySheetData;
+  private DictionaryIndex dictionaryIndex;
+  private String[][] lookups;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void buildDictionary() throws IOException {
+    Path workbook = new WorkbookGenerator(dealerships, dealerships, 3).generateTemp();
+    dictionaryService = new DictionaryService();
+    dictionarySheetData = BenchmarkWorkbooks.readDictionary(workbook);
+    dictionaryIndex = dictionaryService.buildIndex(dictionarySheetData);
+    SheetData orders = BenchmarkWorkbooks.readOrders(workbook);
+    lookups = orders.getData()
+        .stream()
+        .map(row -> new String[]{row.get(11), row.get(10), " " + row.get(9).toUpperCase()})
+        .toArray(String[][]::new);
+  }
+
+  @Benchmark
+  public List<RecipientDto> getRecipientsFromDictionary() {
+    String[] lookup = lookups[next++ % lookups.length];
+    return dictionaryService
+        .getRecipientsFromDictionary(dictionaryIndex, lookup[0], lookup[1], lookup[2]);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public DictionaryIndex buildIndex() {
+    return dictionaryService.buildIndex(dictionarySheetData);
+  }
+}
@@ -0,0 +1,69 @@
+package ru.metlife.integration.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.metlife.integration.benchmark.BenchmarkWorkbooks;
+import ru.metlife.integration.benchmark.WorkbookGenerator;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.dto.LetterDto;
+import ru.metlife.integration.service.xssf.SheetRow;
+
+/**
+ * Order mapping plus recipient fan-out of every row of a parsed sheet, as the export does it
+ * row by row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FanOutBenchmark {
+
+  @Param({"10000"})
+  private int rows;
+  @Param({"1", "3", "8"})
+  private int recipientsPerDealership;
+
+  private OrderService orderService;
+  private LetterFanOut letterFanOut;
+  private ExportSource source;
+  private List<SheetRow> orders;
+  private DictionaryIndex dictionaryIndex;
+
+  @Setup(Level.Trial)
+  public void readWorkbook() throws IOException {
+    Path workbook = new WorkbookGenerator(rows, 200, recipientsPerDealership).generateTemp();
+    DictionaryService dictionaryService = new DictionaryService();
+    orderService = new OrderService(null, null, new SequentialIdGenerator());
+    letterFanOut = new LetterFanOut(dictionaryService);
+    source = new ExportSource();
+    source.setName("benchmark");
+    orders = BenchmarkWorkbooks.readOrders(workbook).getData();
+    dictionaryIndex = dictionaryService.buildIndex(BenchmarkWorkbooks.readDictionary(workbook));
+  }
+
+  @Benchmark
+  public List<LetterDto> fanOut() {
+    List<LetterDto> letters = new ArrayList<>();
+    for (SheetRow row : orders) {
+      letters.addAll(letterFanOut.fanOut(orderService.toOrderDto(source, row), dictionaryIndex));
+    }
+    return letters;
+  }
+}
@@ -0,0 +1,67 @@
+package ru.metlife.integration.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Id generation one at a time and in blocks of a persisted chunk, on one thread and on four
+ * threads sharing the generator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+  @Param({"sequential", "random"})
+  private String generator;
+
+  @Param({"500"})
+  private int blockSize;
+
+  private IdGenerator idGenerator;
+
+  @Setup(Level.Trial)
+  public void createGenerator() {
+    idGenerator = "sequential".equals(generator)
+        ? new SequentialIdGenerator()
+        : new RandomIdGenerator();
+  }
+
+  @Benchmark
+  public String nextId() {
+    return idGenerator.nextId();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public String nextIdContended() {
+    return idGenerator.nextId();
+  }
+
+  @Benchmark
+  public List<String> nextIds() {
+    return idGenerator.nextIds(blockSize);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public List<String> nextIdsContended() {
+    return idGenerator.nextIds(blockSize);
+  }
+}
@@ -0,0 +1,157 @@
+package ru.metlife.integration.service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inserts of persisted chunks keyed by sequential and by random ids. {@code insert} writes
+ * them with JDBC batches into an embedded H2 table shaped like {@code orders}, whose primary
+ * key is a {@code varchar(36)} as in production; the table is emptied before every iteration.
+ *
+ * <p>H2 does not report page splits, so {@code leafPages} replays the same ids on a model of
+ * the clustered index leaf level: pages of {@link LeafPages#PAGE_ROWS} keys, an insert past the
+ * end of the last page starts a new page, an insert into a full page elsewhere splits it in
+ * half. Its {@code pageSplits} and {@code pages} counters add up over an iteration. On SQL
+ * Server the real figures are in {@code sys.dm_db_index_physical_stats}, e.g.
+ * {@code select avg_fragmentation_in_percent, avg_page_space_used_in_percent, page_count
+ * from sys.dm_db_index_physical_stats(db_id(), object_id('orders'), 1, null, 'DETAILED')}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IdInsertBenchmark {
+
+  private static final String INSERT_SQL =
+      "insert into orders (order_id, recipient, status, subject) values (?, ?, 0, ?)";
+
+  @Param({"sequential", "random"})
+  private String generator;
+
+  @Param({"500"})
+  private int chunkSize;
+
+  private IdGenerator idGenerator;
+  private Connection connection;
+
+  @Setup(Level.Trial)
+  public void createTable() throws SQLException {
+    idGenerator = "sequential".equals(generator)
+        ? new SequentialIdGenerator()
+        : new RandomIdGenerator();
+    connection = DriverManager.getConnection(
+        "jdbc:h2:mem:ids-" + generator + ";MODE=MSSQLServer", "sa", "");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table orders (order_id varchar(36) primary key,"
+          + " recipient varchar(255), status int, subject varchar(255))");
+    }
+    connection.setAutoCommit(false);
+  }
+
+  @Setup(Level.Iteration)
+  public void emptyTable() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("truncate table orders");
+    }
+    connection.commit();
+  }
+
+  @TearDown(Level.Trial)
+  public void dropTable() throws SQLException {
+    connection.close();
+  }
+
+  @Benchmark
+  public int[] insert() throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+      for (String id : idGenerator.nextIds(chunkSize)) {
+        statement.setString(1, id);
+        statement.setString(2, "dealer@example.com");
+        statement.setString(3, "Пакет документов");
+        statement.addBatch();
+      }
+      int[] inserted = statement.executeBatch();
+      connection.commit();
+      return inserted;
+    }
+  }
+
+  @Benchmark
+  public void leafPages(LeafPages leafPages) {
+    for (String id : idGenerator.nextIds(chunkSize)) {
+      leafPages.insert(id);
+    }
+  }
+
+  /**
+   * Leaf level of a clustered index on the id, pages keyed by their lowest id.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class LeafPages {
+
+    /**
+     * About as many {@code orders} rows as fit into an 8 KB SQL Server page.
+     */
+    static final int PAGE_ROWS = 40;
+
+    public long pageSplits;
+    public long pages;
+
+    private final TreeMap<String, List<String>> leaves = new TreeMap<>();
+
+    @Setup(Level.Iteration)
+    public void clear() {
+      leaves.clear();
+      leaves.put("", new ArrayList<>(PAGE_ROWS));
+      pageSplits = 0;
+      pages = 0;
+    }
+
+    void insert(String id) {
+      Entry<String, List<String>> leaf = leaves.floorEntry(id);
+      List<String> rows = leaf.getValue();
+      int position = -Collections.binarySearch(rows, id) - 1;
+      if (rows.size() < PAGE_ROWS) {
+        rows.add(position, id);
+      } else if (position == rows.size() && leaf.getKey().equals(leaves.lastKey())) {
+        List<String> appended = new ArrayList<>(PAGE_ROWS);
+        appended.add(id);
+        leaves.put(id, appended);
+        pages++;
+      } else {
+        rows.add(position, id);
+        List<String> upperHalf = new ArrayList<>(rows.subList(rows.size() / 2, rows.size()));
+        rows.subList(rows.size() / 2, rows.size()).clear();
+        leaves.put(upperHalf.get(0), upperHalf);
+        pages++;
+        pageSplits++;
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package ru.metlife.integration.service;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.metlife.integration.benchmark.BenchmarkWorkbooks;
+import ru.metlife.integration.benchmark.WorkbookGenerator;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.dto.OrderDto;
+import ru.metlife.integration.service.xssf.SheetRow;
+
+/**
+ * Mapping of a single parsed order row, including its content fingerprint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrderServiceBenchmark {
+
+  private OrderService orderService;
+  private ExportSource source;
+  private SheetRow[] rows;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void readRows() throws IOException {
+    orderService = new OrderService(null, null, new SequentialIdGenerator());
+    source = new ExportSource();
+    source.setName("benchmark");
+    rows = BenchmarkWorkbooks.readOrders(new WorkbookGenerator(10000, 200, 3).generateTemp())
+        .getData()
+        .toArray(new SheetRow[0]);
+  }
+
+  @Benchmark
+  public OrderDto toOrderDto() {
+    return orderService.toOrderDto(source, rows[next++ % rows.length]);
+  }
+
+  @Benchmark
+  public RowFingerprint fingerprint() {
+    return orderService.fingerprint(source, rows[next++ % rows.length]);
+  }
+}
@@ -0,0 +1,51 @@
+package ru.metlife.integration.service.xssf;
+
+import static ru.metlife.integration.benchmark.WorkbookGenerator.ORDER_HEADER_ROW;
+import static ru.metlife.integration.benchmark.WorkbookGenerator.ORDER_SHEET;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.metlife.integration.benchmark.WorkbookGenerator;
+
+/**
+ * SAX parse of the whole order sheet, including opening the package and reading the shared
+ * strings table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XlsServiceBenchmark {
+
+  @Param({"10000", "100000", "500000"})
+  private int rows;
+
+  private XlsService xlsService;
+
+  @Setup(Level.Trial)
+  public void generateWorkbook() throws IOException {
+    xlsService = new XlsService(new WorkbookGenerator(rows, 200, 3).generateTemp().toString());
+  }
+
+  @Benchmark
+  public int processSheet(Blackhole blackhole) {
+    return xlsService.processSheet(ORDER_SHEET, 0, ORDER_HEADER_ROW,
+        (rowNum, row, data) -> blackhole.consume(row.get(2)))
+        .getRowCount();
+  }
+}
@@ -0,0 +1,35 @@
+package ru.metlife.integration.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommonUtilsBenchmark {
+
+  @Param({"ivanov@example.com", "Иванов Иван <ivanov.ivan@example.com>", "not an e-mail"})
+  private String contact;
+
+  @Benchmark
+  public String formatContactString() {
+    return CommonUtils.formatContactString(contact);
+  }
+
+  @Benchmark
+  public boolean isEmailValid() {
+    return CommonUtils.isEmailValid(contact);
+  }
+}
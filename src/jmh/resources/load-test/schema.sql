@@ -0,0 +1,70 @@
+-- Tables written by the export and the status sync, for the embedded load test database.
+-- orders.row_ver is left out: H2 has no rowversion, the load test syncs in BATCHED mode.
+
+create table orders (
+  order_id                varchar(36)   not null primary key,
+  recipient               varchar(255)  null,
+  channel                 varchar(50)   null,
+  sender                  varchar(255)  null,
+  subject                 varchar(1000) null,
+  body_url                varchar(1000) null,
+  body_content            blob          null,
+  dsg_doc_id              varchar(100)  null,
+  cong_order_id           varchar(100)  null,
+  status                  int           not null,
+  status_details          varchar(1000) null,
+  delivery_status         varchar(50)   null,
+  delivery_status_details varchar(1000) null,
+  provider_code           varchar(50)   null,
+  copy_of_order_id        varchar(36)   null,
+  created_at              datetime      null,
+  created_by              varchar(255)  null
+);
+
+create table data_fi_time_freeze (
+  id          varchar(36)   not null primary key,
+  polnum      varchar(255)  null,
+  doc_type    varchar(255)  null,
+  client_fio  varchar(255)  null,
+  comment     varchar(1000) null,
+  e_mail      varchar(255)  null,
+  e_mail_copy varchar(1000) null,
+  entry_hash  varbinary(16) null,
+  created_at  datetime      null,
+  order_id    varchar(36)   null
+);
+
+create table delivery_data (
+  id              varchar(36)  not null primary key,
+  order_id        varchar(36)  null,
+  delivery_status varchar(50)  null,
+  created_at      datetime     null,
+  pp_num          varchar(100) null,
+  sync_bucket     smallint     as cast(16 * ((ascii(right(order_id, 2)) - 48) % 39)
+    + (ascii(right(order_id, 1)) - 48) % 39 as smallint)
+);
+
+create index ix_delivery_data_order_id on delivery_data (order_id);
+create index ix_delivery_data_pp_num on delivery_data (pp_num);
+create index ix_delivery_data_sync_bucket on delivery_data (sync_bucket);
+
+create table job_checkpoint (
+  job_name      varchar(100) not null primary key,
+  last_position bigint       not null,
+  source_marker varchar(255) null,
+  updated_at    datetime     not null
+);
+
+create table job_lease (
+  lease_name varchar(100) not null primary key,
+  owner      varchar(255) null,
+  token      bigint       not null,
+  expires_at datetime     not null,
+  updated_at datetime     not null
+);
+
+create table cluster_member (
+  node_id      varchar(255) not null primary key,
+  joined_at    datetime     not null,
+  heartbeat_at datetime     not null
+);
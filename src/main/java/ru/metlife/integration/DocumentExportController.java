@@ -1,25 +1,150 @@
 package ru.metlife.integration;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.config.ExportSourcesProperties;
+import ru.metlife.integration.dto.LetterDto;
 import ru.metlife.integration.service.DocumentExportService;
+import ru.metlife.integration.service.ExportJob;
+import ru.metlife.integration.service.ExportJobService;
+import ru.metlife.integration.service.JobConflictException;
 
+/**
+ * Job API. Submitting returns the job at once with 202; its progress is polled from
+ * {@code /jobs/{id}}. A submission that overlaps a running job of another kind, or a job
+ * running on another node, gets 409.
+ *
+ * <p>{@code /writeBack} fills order_id and delivery_status into copies of the workbooks.
+ * {@code /previewExport} streams the letters the next export of a source would write as a
+ * JSON array, without writing anything.
+ */
 @RestController
 public class DocumentExportController {
 
+  /**
+   * Letters written between flushes of the preview; the first one is flushed at once.
+   */
+  private static final int PREVIEW_FLUSH_LETTERS = 100;
+
+  @Autowired
+  private ExportJobService exportJobService;
   @Autowired
   private DocumentExportService documentExportService;
+  @Autowired
+  private ExportSourcesProperties exportSourcesProperties;
+  @Autowired
+  private ObjectMapper objectMapper;
 
   @RequestMapping(value = "/exportDocument")
-  public String exportDocument() {
-    documentExportService.exportDocument();
-    return "ok";
+  public ResponseEntity<ExportJob> exportDocument() {
+    return ResponseEntity.accepted().body(exportJobService.submitExport());
   }
 
   @RequestMapping(value = "/updateDeliveryStatus")
-  public String updateDeliveryStatus() {
-    documentExportService.updateDeliveryStatus();
-    return "ok";
+  public ResponseEntity<ExportJob> updateDeliveryStatus() {
+    return ResponseEntity.accepted().body(exportJobService.submitUpdateDeliveryStatus());
+  }
+
+  @RequestMapping(value = "/writeBack")
+  public ResponseEntity<ExportJob> writeBack() {
+    return ResponseEntity.accepted().body(exportJobService.submitWriteBack());
+  }
+
+  /**
+   * Defaults to the first configured source.
+   */
+  @GetMapping("/previewExport")
+  public ResponseEntity<StreamingResponseBody> previewExport(
+      @RequestParam(required = false) String source) {
+    ExportSource exportSource = source == null
+        ? exportSourcesProperties.getExportSources().get(0)
+        : exportSourcesProperties.getExportSource(source);
+    StreamingResponseBody body = out -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+        // a failed preview must not end as a well-formed, shorter array
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        generator.writeStartArray();
+        long[] written = new long[1];
+        documentExportService.previewExport(exportSource, letter -> {
+          try {
+            writeLetter(generator, letter);
+            if (++written[0] % PREVIEW_FLUSH_LETTERS == 1) {
+              generator.flush();
+            }
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        generator.writeEndArray();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+  }
+
+  @GetMapping("/jobs")
+  public List<ExportJob> getJobs() {
+    return exportJobService.getJobs();
+  }
+
+  @GetMapping("/jobs/{id}")
+  public ResponseEntity<ExportJob> getJob(@PathVariable String id) {
+    return toResponse(exportJobService.getJob(id));
+  }
+
+  @PostMapping("/jobs/{id}/cancel")
+  public ResponseEntity<ExportJob> cancel(@PathVariable String id) {
+    return toResponse(exportJobService.cancel(id));
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<Map<String, Object>> badRequest(IllegalArgumentException e) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("error", e.getMessage());
+    return ResponseEntity.badRequest().body(body);
+  }
+
+  @ExceptionHandler(JobConflictException.class)
+  public ResponseEntity<Map<String, Object>> conflict(JobConflictException e) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("error", e.getMessage());
+    body.put("runningJob", e.getRunningJob());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+  }
+
+  private void writeLetter(JsonGenerator generator, LetterDto letter) throws IOException {
+    generator.writeStartObject();
+    generator.writeNumberField("rowNum", letter.getRowNum());
+    generator.writeStringField("ppNum", letter.getOrder().getPpNum());
+    generator.writeStringField("polNum", letter.getOrder().getPolNum());
+    generator.writeStringField("docType", letter.getOrder().getDocType());
+    generator.writeStringField("clientFio", letter.getOrder().getClientFio());
+    generator.writeStringField("region", letter.getOrder().getRegion());
+    generator.writeStringField("partner", letter.getOrder().getPartner());
+    generator.writeStringField("dealership", letter.getOrder().getDealership());
+    generator.writeStringField("email", letter.getEmail());
+    generator.writeStringField("emailCC", letter.getEmailCC());
+    generator.writeEndObject();
+  }
+
+  private ResponseEntity<ExportJob> toResponse(ExportJob job) {
+    return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
   }
 }
@@ -0,0 +1,25 @@
+package ru.metlife.integration.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ExportExecutorConfiguration {
+
+  /**
+   * Bounded pool the export sources are processed on, at most {@code export-workers} workbooks at
+   * a time.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor exportExecutor(
+      @Value("${fi-cong-integration.export-workers:2}") int exportWorkers) {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(exportWorkers);
+    executor.setMaxPoolSize(exportWorkers);
+    executor.setQueueCapacity(64);
+    executor.setThreadNamePrefix("export-");
+    return executor;
+  }
+}
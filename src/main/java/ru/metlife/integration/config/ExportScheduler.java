@@ -0,0 +1,62 @@
+package ru.metlife.integration.config;
+
+import static java.util.Collections.singletonList;
+
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.stereotype.Component;
+import ru.metlife.integration.service.ExportJob;
+import ru.metlife.integration.service.ExportJobService;
+import ru.metlife.integration.service.JobConflictException;
+
+/**
+ * Registers one cron trigger per export source and the triggers of both delivery status syncs.
+ * Triggers only submit jobs to {@link ExportJobService}, so sources with coinciding crons are
+ * processed concurrently, and a run still busy from a manual call or on another node is not
+ * started twice.
+ */
+@Component
+@Slf4j
+public class ExportScheduler implements SchedulingConfigurer {
+
+  @Value("${fi-cong-integration.update-delivery-status-cron}")
+  private String updateDeliveryStatusCron;
+  @Value("${fi-cong-integration.full-status-sync-cron}")
+  private String fullStatusSyncCron;
+
+  private ExportSourcesProperties exportSourcesProperties;
+  private ExportJobService exportJobService;
+
+  @Autowired
+  public ExportScheduler(ExportSourcesProperties exportSourcesProperties,
+      ExportJobService exportJobService) {
+    this.exportSourcesProperties = exportSourcesProperties;
+    this.exportJobService = exportJobService;
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+    for (ExportSource source : exportSourcesProperties.getExportSources()) {
+      log.info("export source {} scheduled with cron {}", source.getName(), source.getCron());
+      taskRegistrar.addCronTask(
+          () -> submit(() -> exportJobService.submitExport(singletonList(source))),
+          source.getCron());
+    }
+    taskRegistrar.addCronTask(() -> submit(exportJobService::submitUpdateDeliveryStatus),
+        updateDeliveryStatusCron);
+    taskRegistrar.addCronTask(() -> submit(exportJobService::submitReconcileDeliveryStatus),
+        fullStatusSyncCron);
+  }
+
+  private void submit(Supplier<ExportJob> submission) {
+    try {
+      submission.get();
+    } catch (JobConflictException e) {
+      log.info("{}, skipped", e.getMessage());
+    }
+  }
+}
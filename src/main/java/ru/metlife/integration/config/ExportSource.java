@@ -0,0 +1,31 @@
+package ru.metlife.integration.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One registration workbook to export orders from.
+ */
+@Getter
+@Setter
+@ToString
+public class ExportSource {
+
+  private String name;
+  private String docFilePath;
+  private String orderSheetName = "Общая";
+  private int orderHeaderRowNum = 0;
+  private String dictionarySheetName = "Справочник";
+  private int dictionaryHeaderRowNum = 3;
+  private String cron;
+  /**
+   * Prepended to "№ п/п" before it is stored in delivery_data.pp_num, so that row numbers of
+   * different workbooks don't shadow each other. Empty for the default source.
+   */
+  private String ppNumPrefix = "";
+
+  public String qualifyPpNum(String ppNum) {
+    return ppNumPrefix.isEmpty() || ppNum == null ? ppNum : ppNumPrefix + ppNum;
+  }
+}
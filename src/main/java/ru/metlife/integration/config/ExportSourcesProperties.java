@@ -0,0 +1,76 @@
+package ru.metlife.integration.config;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of workbooks to export. Without an explicit {@code sources} list the single
+ * {@code doc-file-path} workbook is exported under the name "default". The registry is resolved
+ * once it is bound; a source without a name or with the name of another one fails the startup.
+ */
+@Component
+@ConfigurationProperties(prefix = "fi-cong-integration")
+@Getter
+@Setter
+public class ExportSourcesProperties {
+
+  public static final String DEFAULT_SOURCE = "default";
+
+  private String docFilePath;
+  private String exportOrderCron;
+  private List<ExportSource> sources = new ArrayList<>();
+
+  @Setter(AccessLevel.NONE)
+  private List<ExportSource> exportSources;
+
+  /**
+   * Sources without a cron of their own run on {@code export-order-cron}.
+   */
+  @PostConstruct
+  public void resolve() {
+    if (sources.isEmpty()) {
+      ExportSource source = new ExportSource();
+      source.setName(DEFAULT_SOURCE);
+      source.setDocFilePath(docFilePath);
+      source.setCron(exportOrderCron);
+      exportSources = singletonList(source);
+      return;
+    }
+    Set<String> names = new HashSet<>();
+    for (ExportSource source : sources) {
+      if (isBlank(source.getName())) {
+        throw new IllegalStateException("export source without a name: " + source);
+      }
+      if (!names.add(source.getName())) {
+        throw new IllegalStateException("duplicate export source " + source.getName());
+      }
+      if (source.getCron() == null) {
+        source.setCron(exportOrderCron);
+      }
+    }
+    exportSources = unmodifiableList(new ArrayList<>(sources));
+  }
+
+  public List<ExportSource> getExportSources() {
+    return exportSources;
+  }
+
+  public ExportSource getExportSource(String name) {
+    return getExportSources().stream()
+        .filter(source -> source.getName().equals(name))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("unknown export source " + name));
+  }
+}
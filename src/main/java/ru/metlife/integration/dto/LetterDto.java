@@ -0,0 +1,38 @@
+package ru.metlife.integration.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * One letter of a fanned-out order: the order data shared by all recipients of a sheet row and
+ * the recipient this letter goes to. Only the ids are per letter.
+ */
+@Getter
+@Setter
+@ToString
+public class LetterDto {
+
+  private final OrderDto order;
+  private final RecipientDto recipient;
+  private String orderId;
+  private String letterId;
+  private String deliveryDataId;
+
+  public LetterDto(OrderDto order, RecipientDto recipient) {
+    this.order = order;
+    this.recipient = recipient;
+  }
+
+  public int getRowNum() {
+    return order.getRowNum();
+  }
+
+  public String getEmail() {
+    return recipient.getEmail();
+  }
+
+  public String getEmailCC() {
+    return recipient.getEmailCC();
+  }
+}
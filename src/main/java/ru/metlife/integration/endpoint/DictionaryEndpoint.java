@@ -0,0 +1,66 @@
+package ru.metlife.integration.endpoint;
+
+import static java.util.Objects.isNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.config.ExportSourcesProperties;
+import ru.metlife.integration.service.DictionaryService;
+import ru.metlife.integration.service.DictionarySnapshot;
+
+/**
+ * Version, age and size of the cached dictionary of every source; {@code POST reload} re-reads
+ * them. Configured under {@code endpoints.dictionary} like the built-in endpoints.
+ */
+@Component
+@ConfigurationProperties(prefix = "endpoints.dictionary")
+public class DictionaryEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+  private DictionaryService dictionaryService;
+  private ExportSourcesProperties exportSourcesProperties;
+
+  @Autowired
+  public DictionaryEndpoint(DictionaryService dictionaryService,
+      ExportSourcesProperties exportSourcesProperties) {
+    super("dictionary");
+    this.dictionaryService = dictionaryService;
+    this.exportSourcesProperties = exportSourcesProperties;
+  }
+
+  @Override
+  public Map<String, Object> invoke() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    for (ExportSource source : exportSourcesProperties.getExportSources()) {
+      result.put(source.getName(), describe(dictionaryService.getSnapshot(source)));
+    }
+    return result;
+  }
+
+  Map<String, Object> reload() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    for (ExportSource source : exportSourcesProperties.getExportSources()) {
+      result.put(source.getName(), describe(dictionaryService.reload(source)));
+    }
+    return result;
+  }
+
+  private Map<String, Object> describe(DictionarySnapshot snapshot) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("loaded", !isNull(snapshot));
+    if (!isNull(snapshot)) {
+      result.put("version", snapshot.getVersion());
+      result.put("loadedAt", snapshot.getLoadedAt());
+      result.put("ageSeconds", snapshot.getAgeMillis() / 1000);
+      result.put("keys", snapshot.getDictionaryIndex().size());
+      result.put("sourceSize", snapshot.getSourceSize());
+      result.put("sourceLastModified", snapshot.getSourceLastModified());
+      result.put("contentChecksum", Long.toHexString(snapshot.getContentChecksum()));
+    }
+    return result;
+  }
+}
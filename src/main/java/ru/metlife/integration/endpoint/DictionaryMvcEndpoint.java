@@ -0,0 +1,28 @@
+package ru.metlife.integration.endpoint;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.mvc.EndpointMvcAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Component
+public class DictionaryMvcEndpoint extends EndpointMvcAdapter {
+
+  private final DictionaryEndpoint delegate;
+
+  @Autowired
+  public DictionaryMvcEndpoint(DictionaryEndpoint delegate) {
+    super(delegate);
+    this.delegate = delegate;
+  }
+
+  @PostMapping("/reload")
+  @ResponseBody
+  public Object reload() {
+    if (!delegate.isEnabled()) {
+      return getDisabledResponse();
+    }
+    return delegate.reload();
+  }
+}
@@ -0,0 +1,35 @@
+package ru.metlife.integration.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "job_checkpoint")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class JobCheckpointEntity implements Serializable {
+
+  private static final long serialVersionUID = 2817439310554874512L;
+
+  @Id
+  @Column(name = "job_name")
+  private String jobName;
+  @Column(name = "last_position")
+  private long lastPosition;
+  @Column(name = "source_marker")
+  private String sourceMarker;
+  @Column(name = "updated_at")
+  private Date updatedAt;
+}
@@ -1,8 +1,13 @@
 package ru.metlife.integration.repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -16,6 +21,10 @@ public interface DeliveryDataRepository extends CrudRepository<DeliveryDataEntit
 
   boolean existsDeliveryDataByPpNum(String ppNum);
 
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+  @Query("select distinct d.ppNum from DeliveryDataEntity d where d.ppNum is not null")
+  Stream<String> streamPpNums();
+
   @Modifying
   @Query("update DeliveryDataEntity d SET d.deliveryStatus = :deliveryStatus WHERE d.orderId = :orderId")
   int updateStatus(@Param("deliveryStatus") String deliveryStatus,
@@ -0,0 +1,10 @@
+package ru.metlife.integration.repository;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import ru.metlife.integration.entity.JobCheckpointEntity;
+
+@Repository
+public interface JobCheckpointRepository extends CrudRepository<JobCheckpointEntity, String> {
+
+}
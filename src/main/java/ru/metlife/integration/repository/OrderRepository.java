@@ -7,5 +7,4 @@ import ru.metlife.integration.entity.OrderEntity;
 @Repository
 public interface OrderRepository extends CrudRepository<OrderEntity, String> {
 
-  OrderEntity findByOrderId(String orderId);
 }
@@ -0,0 +1,127 @@
+package ru.metlife.integration.service;
+
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Live nodes in the {@code cluster_member} table and the status sync partitions each of them
+ * owns. With {@code status-sync-partitions} above one, every node heartbeats its row; a node
+ * whose heartbeat is older than {@code cluster-member-timeout-ms} is dropped. Partitions are
+ * dealt round robin over the live nodes ordered by node id, so they move as soon as a node
+ * joins or leaves. While nodes disagree about the membership, the partition leases keep a
+ * partition from being synced twice at once.
+ */
+@Service
+@Slf4j
+public class ClusterMembershipService {
+
+  private static final String HEARTBEAT_SQL =
+      "update cluster_member set heartbeat_at = current_timestamp where node_id = ?";
+
+  private static final String JOIN_SQL = ""
+      + "insert into cluster_member (node_id, joined_at, heartbeat_at)"
+      + " values (?, current_timestamp, current_timestamp)";
+
+  private static final String EVICT_SQL = "delete from cluster_member"
+      + " where heartbeat_at < dateadd(millisecond, ?, current_timestamp)";
+
+  private static final String LIVE_MEMBERS_SQL = "select node_id from cluster_member"
+      + " where heartbeat_at >= dateadd(millisecond, ?, current_timestamp) order by node_id";
+
+  private static final String LEAVE_SQL = "delete from cluster_member where node_id = ?";
+
+  @Value("${fi-cong-integration.status-sync-partitions:1}")
+  private int partitionCount;
+  // int, SQL Server's dateadd rejects a bigint number
+  @Value("${fi-cong-integration.cluster-member-timeout-ms:30000}")
+  private int memberTimeoutMs;
+
+  private JdbcTemplate jdbcTemplate;
+  private JobLeaseService jobLeaseService;
+
+  @Autowired
+  public ClusterMembershipService(JdbcTemplate jdbcTemplate, JobLeaseService jobLeaseService) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.jobLeaseService = jobLeaseService;
+  }
+
+  public boolean isPartitioned() {
+    return partitionCount > 1;
+  }
+
+  public int getPartitionCount() {
+    return partitionCount;
+  }
+
+  @Scheduled(fixedDelayString = "${fi-cong-integration.cluster-heartbeat-ms:10000}")
+  public void heartbeat() {
+    if (!isPartitioned()) {
+      return;
+    }
+    String nodeId = jobLeaseService.getNodeId();
+    try {
+      if (jdbcTemplate.update(HEARTBEAT_SQL, nodeId) == 0) {
+        try {
+          jdbcTemplate.update(JOIN_SQL, nodeId);
+          log.info("node {} joined the cluster", nodeId);
+        } catch (DuplicateKeyException e) {
+          log.debug("node {} joined concurrently", nodeId);
+        }
+      }
+      int evicted = jdbcTemplate.update(EVICT_SQL, -memberTimeoutMs);
+      if (evicted > 0) {
+        log.info("{} silent nodes dropped from the cluster", evicted);
+      }
+    } catch (DataAccessException e) {
+      log.warn("cluster heartbeat of {} failed: {}", nodeId, e.getMessage());
+    }
+  }
+
+  public List<String> getLiveMembers() {
+    return jdbcTemplate.queryForList(LIVE_MEMBERS_SQL, String.class, -memberTimeoutMs);
+  }
+
+  /**
+   * Partitions this node syncs now; refreshes its own heartbeat first.
+   */
+  public List<Integer> getOwnedPartitions() {
+    heartbeat();
+    List<String> members = getLiveMembers();
+    int memberIndex = members.indexOf(jobLeaseService.getNodeId());
+    if (memberIndex < 0) {
+      log.warn("node {} is not a live cluster member, no partitions owned",
+          jobLeaseService.getNodeId());
+      return emptyList();
+    }
+    List<Integer> owned = new ArrayList<>();
+    for (int partition = memberIndex; partition < partitionCount; partition += members.size()) {
+      owned.add(partition);
+    }
+    log.debug("node {} of {} owns partitions {}", memberIndex + 1, members.size(), owned);
+    return owned;
+  }
+
+  @PreDestroy
+  public void leave() {
+    if (!isPartitioned()) {
+      return;
+    }
+    try {
+      jdbcTemplate.update(LEAVE_SQL, jobLeaseService.getNodeId());
+    } catch (DataAccessException e) {
+      log.warn("node {} did not leave the cluster: {}", jobLeaseService.getNodeId(),
+          e.getMessage());
+    }
+  }
+}
@@ -1,10 +1,14 @@
 package ru.metlife.integration.service;
 
-import java.util.UUID;
+import java.util.HashSet;
+import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.metlife.integration.dto.OrderDto;
 import ru.metlife.integration.entity.DataFiTimeFreezeEntity;
 import ru.metlife.integration.repository.DataFiTimeFreezeRepository;
@@ -13,14 +17,22 @@ import ru.metlife.integration.service.mapper.BeanMapper;
 @Service
 public class DataFiTimeFreezeService extends AbstractCrudService<OrderDto, DataFiTimeFreezeEntity> {
 
+  private static final String SELECT_ENTRY_HASHES_SQL =
+      "select distinct entry_hash from data_fi_time_freeze where entry_hash is not null";
+
   private DataFiTimeFreezeRepository dataFiTimeFreezeRepository;
   private BeanMapper<OrderDto, DataFiTimeFreezeEntity> beanMapper;
+  private JdbcTemplate jdbcTemplate;
+  private IdGenerator idGenerator;
 
   @Autowired
   public DataFiTimeFreezeService(DataFiTimeFreezeRepository dataFiTimeFreezeRepository,
-      @Qualifier("dataFiTimeFreezeMapper") BeanMapper<OrderDto, DataFiTimeFreezeEntity> beanMapper) {
+      @Qualifier("dataFiTimeFreezeMapper") BeanMapper<OrderDto, DataFiTimeFreezeEntity> beanMapper,
+      JdbcTemplate jdbcTemplate, IdGenerator idGenerator) {
     this.dataFiTimeFreezeRepository = dataFiTimeFreezeRepository;
     this.beanMapper = beanMapper;
+    this.jdbcTemplate = jdbcTemplate;
+    this.idGenerator = idGenerator;
   }
 
   public void saveOrder(OrderDto dto) {
@@ -28,9 +40,26 @@ public class DataFiTimeFreezeService extends AbstractCrudService<OrderDto, DataF
     dto.setLetterId(orderDto.getLetterId());
   }
 
+  /**
+   * Loads every stored entry hash with one query, row by row. Holds both row fingerprints and
+   * the MD5 hashes of rows exported before fingerprints were introduced. Plain JDBC: Hibernate
+   * 5.0 can't scroll over a single binary column.
+   */
+  @Transactional(readOnly = true)
+  public Set<RowFingerprint> findExportedFingerprints() {
+    Set<RowFingerprint> fingerprints = new HashSet<>();
+    jdbcTemplate.query(SELECT_ENTRY_HASHES_SQL, (RowCallbackHandler) rs -> {
+      RowFingerprint fingerprint = RowFingerprint.of(rs.getBytes(1));
+      if (fingerprint != null) {
+        fingerprints.add(fingerprint);
+      }
+    });
+    return fingerprints;
+  }
+
   @Override
   protected DataFiTimeFreezeEntity entityPreSaveAction(DataFiTimeFreezeEntity entity) {
-    entity.setId(UUID.randomUUID().toString());
+    entity.setId(idGenerator.nextId());
     return super.entityPreSaveAction(entity);
   }
 
@@ -1,10 +1,13 @@
 package ru.metlife.integration.service;
 
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Set;
+import java.util.stream.Stream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.repository.CrudRepository;
@@ -21,12 +24,15 @@ public class DeliveryDataService extends AbstractCrudService<DeliveryDataDto, De
 
   private DeliveryDataRepository deliveryDataRepository;
   private BeanMapper<DeliveryDataDto, DeliveryDataEntity> beanMapper;
+  private IdGenerator idGenerator;
 
   @Autowired
   public DeliveryDataService(DeliveryDataRepository deliveryDataRepository,
-      @Qualifier("deliveryDataMapper") BeanMapper<DeliveryDataDto, DeliveryDataEntity> beanMapper) {
+      @Qualifier("deliveryDataMapper") BeanMapper<DeliveryDataDto, DeliveryDataEntity> beanMapper,
+      IdGenerator idGenerator) {
     this.deliveryDataRepository = deliveryDataRepository;
     this.beanMapper = beanMapper;
+    this.idGenerator = idGenerator;
   }
 
   public void saveDeliveryData(DeliveryDataDto dto) {
@@ -39,6 +45,17 @@ public class DeliveryDataService extends AbstractCrudService<DeliveryDataDto, De
     return deliveryDataRepository.existsDeliveryDataByPpNum(ppNum);
   }
 
+  /**
+   * Loads every known pp_num with one streamed query, so the order sheet can be filtered
+   * in memory instead of issuing an exists query per row.
+   */
+  @Transactional(readOnly = true)
+  public Set<String> findExportedPpNums() {
+    try (Stream<String> ppNums = deliveryDataRepository.streamPpNums()) {
+      return ppNums.collect(toCollection(HashSet::new));
+    }
+  }
+
   @Transactional(readOnly = true)
   public List<DeliveryDataDto> findByDeliveryStatus() {
     return deliveryDataRepository.findByDeliveryStatus()
@@ -54,7 +71,7 @@ public class DeliveryDataService extends AbstractCrudService<DeliveryDataDto, De
 
   @Override
   protected DeliveryDataEntity entityPreSaveAction(DeliveryDataEntity entity) {
-    entity.setId(UUID.randomUUID().toString());
+    entity.setId(idGenerator.nextId());
     return super.entityPreSaveAction(entity);
   }
 
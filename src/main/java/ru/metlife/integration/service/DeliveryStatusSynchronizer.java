@@ -0,0 +1,182 @@
+package ru.metlife.integration.service;
+
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Copies {@code orders.delivery_status} to the not yet COMPLETED {@code delivery_data} rows.
+ * Only rows whose status actually differs are written.
+ */
+@Service
+@Slf4j
+public class DeliveryStatusSynchronizer {
+
+  public enum Mode {
+    /**
+     * One UPDATE ... FROM statement joining delivery_data to orders (SQL Server).
+     */
+    UPDATE_FROM,
+    /**
+     * Portable fallback: select the changed rows, then update them with JDBC batches.
+     */
+    BATCHED
+  }
+
+  static final String WATERMARK_JOB = "updateDeliveryStatus";
+  private static final String WATERMARK_MARKER = "orders.row_ver";
+
+  private static final String STATUS_DIFFERS = ""
+      + " where (d.delivery_status is null or d.delivery_status <> 'COMPLETED')"
+      + " and (d.delivery_status <> o.delivery_status"
+      + " or (d.delivery_status is null and o.delivery_status is not null)"
+      + " or (d.delivery_status is not null and o.delivery_status is null))";
+
+  private static final String ROW_VERSION_RANGE = ""
+      + " and o.row_ver > cast(? as binary(8)) and o.row_ver <= cast(? as binary(8))";
+
+  /**
+   * Range of {@code delivery_data.sync_bucket}, the persisted and indexed value 0..255 of the
+   * last two hex digits of order_id (db/delivery_data_sync_bucket.sql). Both digits are random
+   * in the generated ids; partition {@code p} of {@code n} seeks buckets
+   * {@code [p * 256 / n, (p + 1) * 256 / n)}.
+   */
+  private static final String PARTITION = " and d.sync_bucket >= ? and d.sync_bucket < ?";
+  private static final int SYNC_BUCKETS = 256;
+
+  private static final String UPDATE_FROM_SQL = ""
+      + "update d set d.delivery_status = o.delivery_status"
+      + " from delivery_data d join orders o on o.order_id = d.order_id"
+      + STATUS_DIFFERS;
+
+  private static final String SELECT_CHANGED_SQL = ""
+      + "select d.id, o.delivery_status"
+      + " from delivery_data d join orders o on o.order_id = d.order_id"
+      + STATUS_DIFFERS;
+
+  private static final String UPDATE_BY_ID_SQL =
+      "update delivery_data set delivery_status = ? where id = ?";
+
+  /**
+   * Highest rowversion that is guaranteed to belong to a committed change.
+   */
+  private static final String CURRENT_ROW_VERSION_SQL =
+      "select cast(min_active_rowversion() as bigint) - 1";
+
+  @Value("${fi-cong-integration.status-sync-mode:UPDATE_FROM}")
+  private Mode mode;
+  @Value("${fi-cong-integration.persist-batch-size:100}")
+  private int batchSize;
+
+  private JdbcTemplate jdbcTemplate;
+  private JobCheckpointService jobCheckpointService;
+  private JobLeaseService jobLeaseService;
+
+  @Autowired
+  public DeliveryStatusSynchronizer(JdbcTemplate jdbcTemplate,
+      JobCheckpointService jobCheckpointService, JobLeaseService jobLeaseService) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.jobCheckpointService = jobCheckpointService;
+    this.jobLeaseService = jobLeaseService;
+  }
+
+  /**
+   * Full reconciliation over the whole non-COMPLETED backlog.
+   *
+   * @return number of delivery_data rows whose status was changed
+   */
+  @Transactional
+  public int synchronize() {
+    return synchronize("");
+  }
+
+  /**
+   * Only looks at orders whose {@code row_ver} moved past the watermark stored by the previous
+   * run. The first run, without a watermark, falls back to a full reconciliation.
+   *
+   * @return number of delivery_data rows whose status was changed
+   */
+  @Transactional
+  public int synchronizeIncrementally() {
+    long watermark = jobCheckpointService.getPosition(WATERMARK_JOB, WATERMARK_MARKER, -1);
+    long currentRowVersion = jdbcTemplate.queryForObject(CURRENT_ROW_VERSION_SQL, Long.class);
+    int updated;
+    if (watermark < 0) {
+      updated = synchronize("");
+    } else {
+      updated = synchronize(ROW_VERSION_RANGE, watermark, currentRowVersion);
+    }
+    jobCheckpointService.savePosition(WATERMARK_JOB, currentRowVersion, WATERMARK_MARKER);
+    log.debug("delivery status watermark moved from {} to {}", watermark, currentRowVersion);
+    return updated;
+  }
+
+  /**
+   * Full reconciliation of one partition of the backlog, fenced by the lease of the partition.
+   */
+  @Transactional
+  public int synchronize(int partition, int partitionCount, JobLease lease) {
+    jobLeaseService.checkHeld(lease);
+    return synchronize(PARTITION, bucketRange(partition, partitionCount));
+  }
+
+  /**
+   * Incremental sync of one partition; every partition keeps its own watermark, which is only
+   * moved while the lease of the partition is held.
+   */
+  @Transactional
+  public int synchronizeIncrementally(int partition, int partitionCount, JobLease lease) {
+    jobLeaseService.checkHeld(lease);
+    String watermarkJob = WATERMARK_JOB + ":" + partition + "/" + partitionCount;
+    long watermark = jobCheckpointService.getPosition(watermarkJob, WATERMARK_MARKER, -1);
+    long currentRowVersion = jdbcTemplate.queryForObject(CURRENT_ROW_VERSION_SQL, Long.class);
+    int updated;
+    Object[] buckets = bucketRange(partition, partitionCount);
+    if (watermark < 0) {
+      updated = synchronize(PARTITION, buckets);
+    } else {
+      updated = synchronize(ROW_VERSION_RANGE + PARTITION, watermark, currentRowVersion,
+          buckets[0], buckets[1]);
+    }
+    jobCheckpointService.savePosition(watermarkJob, currentRowVersion, WATERMARK_MARKER);
+    return updated;
+  }
+
+  private static Object[] bucketRange(int partition, int partitionCount) {
+    if (partitionCount > SYNC_BUCKETS) {
+      throw new IllegalArgumentException(
+          "at most " + SYNC_BUCKETS + " status sync partitions, not " + partitionCount);
+    }
+    return new Object[]{partition * SYNC_BUCKETS / partitionCount,
+        (partition + 1) * SYNC_BUCKETS / partitionCount};
+  }
+
+  int synchronize(String condition, Object... args) {
+    return mode == Mode.UPDATE_FROM ? updateFrom(condition, args) : updateBatched(condition, args);
+  }
+
+  int updateFrom(String condition, Object... args) {
+    return jdbcTemplate.update(UPDATE_FROM_SQL + condition, args);
+  }
+
+  int updateBatched(String condition, Object... args) {
+    List<Object[]> changed = jdbcTemplate.query(SELECT_CHANGED_SQL + condition, args,
+        (rs, rowNum) -> new Object[]{rs.getString(2), rs.getString(1)});
+    int updated = 0;
+    for (int from = 0; from < changed.size(); from += batchSize) {
+      List<Object[]> batch = new ArrayList<>(
+          changed.subList(from, min(changed.size(), from + batchSize)));
+      for (int count : jdbcTemplate.batchUpdate(UPDATE_BY_ID_SQL, batch)) {
+        updated += count < 0 ? 1 : count;
+      }
+    }
+    return updated;
+  }
+}
@@ -0,0 +1,53 @@
+package ru.metlife.integration.service;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableMap;
+import static org.apache.commons.lang3.StringUtils.EMPTY;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import ru.metlife.integration.dto.RecipientDto;
+
+/**
+ * Compiled "Справочник": recipients keyed by region, partner and dealership. Lists are built
+ * and validated once when the index is compiled, so resolving an order row is a single lookup.
+ */
+public class DictionaryIndex {
+
+  private final Map<Key, List<RecipientDto>> recipientsByKey;
+
+  DictionaryIndex(Map<Key, List<RecipientDto>> recipientsByKey) {
+    this.recipientsByKey = unmodifiableMap(new HashMap<>(recipientsByKey));
+  }
+
+  public List<RecipientDto> getRecipients(String region, String partner, String dealership) {
+    return recipientsByKey.getOrDefault(new Key(region, partner, dealership), emptyList());
+  }
+
+  public int size() {
+    return recipientsByKey.size();
+  }
+
+  @EqualsAndHashCode
+  @ToString
+  static final class Key {
+
+    private final String region;
+    private final String partner;
+    private final String dealership;
+
+    Key(String region, String partner, String dealership) {
+      this.region = normalize(region);
+      this.partner = normalize(partner);
+      this.dealership = normalize(dealership);
+    }
+
+    private static String normalize(String value) {
+      return value == null ? EMPTY : value.trim().toLowerCase(Locale.ROOT);
+    }
+  }
+}
@@ -1,26 +1,39 @@
 package ru.metlife.integration.service;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.stream;
 import static java.util.Collections.emptyList;
-import static java.util.Objects.isNull;
+import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static ru.metlife.integration.util.CommonUtils.andLogFilteredOutValues;
-import static ru.metlife.integration.util.CommonUtils.getOrderIndependentHash;
 import static ru.metlife.integration.util.CommonUtils.getStringCellValue;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.metlife.integration.config.ExportSource;
 import ru.metlife.integration.dto.DictionaryDto;
 import ru.metlife.integration.dto.RecipientDto;
 import ru.metlife.integration.service.xssf.DictionaryRowContentCallback;
+import ru.metlife.integration.service.xssf.SheetRow;
+import ru.metlife.integration.service.xssf.SheetSchema;
+import ru.metlife.integration.service.xssf.WorkbookSession;
 import ru.metlife.integration.service.xssf.XlsService;
 import ru.metlife.integration.service.xssf.XlsService.SheetData;
 import ru.metlife.integration.util.CommonUtils;
@@ -29,31 +42,25 @@ import ru.metlife.integration.util.CommonUtils;
 @Slf4j
 public class DictionaryService {
 
-  @Value("${fi-cong-integration.doc-file-path}")
-  private String docFilePath;
-
-  private XlsService xlsService;
-
-  @PostConstruct
-  public void init() {
-    xlsService = new XlsService(docFilePath);
-  }
+  private final Map<String, AtomicReference<DictionarySnapshot>> snapshots =
+      new ConcurrentHashMap<>();
 
   List<DictionaryDto> toDictionary(XlsService.SheetData dictionarySheetData) {
+    Columns columns = dictionarySheetData.getSchema().compiled(Columns.class, Columns::new);
     return Optional.ofNullable(dictionarySheetData.getData())
         .orElse(emptyList())
         .stream()
-        .map(this::toDictionary)
+        .map(row -> toDictionary(row, columns))
         .collect(toList());
   }
 
-  DictionaryDto toDictionary(Map<String, String> dictionaryFromXls) {
-    String number = getStringCellValue(dictionaryFromXls, "№");
-    String partner = getStringCellValue(dictionaryFromXls, "Партнер");
-    String dealership = getStringCellValue(dictionaryFromXls, "Дилерский центр");
-    String region = getStringCellValue(dictionaryFromXls, "Регион");
-    String email = getStringCellValue(dictionaryFromXls, "e-mail");
-    String emailCC = getStringCellValue(dictionaryFromXls, "e-mail копия");
+  DictionaryDto toDictionary(SheetRow dictionaryFromXls, Columns columns) {
+    String number = getStringCellValue(dictionaryFromXls, columns.number);
+    String partner = getStringCellValue(dictionaryFromXls, columns.partner);
+    String dealership = getStringCellValue(dictionaryFromXls, columns.dealership);
+    String region = getStringCellValue(dictionaryFromXls, columns.region);
+    String email = getStringCellValue(dictionaryFromXls, columns.email);
+    String emailCC = getStringCellValue(dictionaryFromXls, columns.emailCC);
 
     DictionaryDto dictionaryDto = new DictionaryDto();
     dictionaryDto.setNumber(number);
@@ -65,45 +72,175 @@ public class DictionaryService {
     return dictionaryDto;
   }
 
-  public SheetData processSheet() {
-    return xlsService
-        .processSheet("Справочник", 0, 3, new DictionaryRowContentCallback());
+  public SheetData processSheet(ExportSource source) {
+    try (WorkbookSession workbookSession = new XlsService(source.getDocFilePath())
+        .openSession()) {
+      return processSheet(source, workbookSession);
+    }
+  }
+
+  public SheetData processSheet(ExportSource source, WorkbookSession workbookSession) {
+    return workbookSession
+        .processSheet(source.getDictionarySheetName(), 0, source.getDictionaryHeaderRowNum(),
+            new DictionaryRowContentCallback());
+  }
+
+  public DictionaryIndex buildIndex(SheetData dictionarySheetData) {
+    Map<DictionaryIndex.Key, List<RecipientDto>> recipientsByKey = new HashMap<>();
+    toDictionary(dictionarySheetData)
+        .stream()
+        .filter(d -> isNotBlank(d.getEmail()))
+        .forEach(d -> recipientsByKey.computeIfAbsent(
+            new DictionaryIndex.Key(d.getRegion(), d.getPartner(), d.getDealership()),
+            key -> toRecipients(d)));
+    log.info("dictionary index built: {} keys", recipientsByKey.size());
+    return new DictionaryIndex(recipientsByKey);
+  }
+
+  public List<RecipientDto> getRecipientsFromDictionary(DictionaryIndex dictionaryIndex,
+      String region, String partner, String dealership) {
+    return dictionaryIndex.getRecipients(region, partner, dealership);
+  }
+
+  public DictionarySnapshot getSnapshot(ExportSource source) {
+    return getSnapshotReference(source).get();
+  }
+
+  public DictionaryIndex getDictionaryIndex(ExportSource source) {
+    return refresh(source, null, false).getDictionaryIndex();
+  }
+
+  /**
+   * Returns the cached index, re-reading the dictionary sheet from the given session only when
+   * the size or modification time of the session's workbook has changed since the last load.
+   * The index itself is rebuilt only when the content checksum of the sheet differs as well.
+   */
+  public DictionaryIndex getDictionaryIndex(ExportSource source,
+      WorkbookSession workbookSession) {
+    return refresh(source, workbookSession, false).getDictionaryIndex();
+  }
+
+  public DictionarySnapshot reload(ExportSource source) {
+    return refresh(source, null, true);
+  }
+
+  private AtomicReference<DictionarySnapshot> getSnapshotReference(ExportSource source) {
+    return snapshots.computeIfAbsent(source.getName(), name -> new AtomicReference<>());
   }
 
-  public List<RecipientDto> getRecipientsFromDictionary(SheetData dictionarySheetData, int hash) {
+  DictionarySnapshot refresh(ExportSource source, WorkbookSession workbookSession,
+      boolean force) {
+    AtomicReference<DictionarySnapshot> snapshot = getSnapshotReference(source);
+    BasicFileAttributes attributes = readSourceAttributes(workbookSession != null
+        ? workbookSession.getDocFilePath() : source.getDocFilePath());
+    DictionarySnapshot current = snapshot.get();
+    if (!force && isSourceUnchanged(current, attributes)) {
+      return current;
+    }
+    synchronized (snapshot) {
+      current = snapshot.get();
+      if (!force && isSourceUnchanged(current, attributes)) {
+        return current;
+      }
+      SheetData dictionarySheetData;
+      if (workbookSession != null) {
+        dictionarySheetData = processSheet(source, workbookSession);
+      } else {
+        dictionarySheetData = processSheet(source);
+      }
+      long sourceSize = attributes == null ? -1 : attributes.size();
+      long sourceLastModified = attributes == null ? -1 : attributes.lastModifiedTime().toMillis();
+      long contentChecksum = checksum(dictionarySheetData);
+      DictionarySnapshot next;
+      if (!force && current != null && current.getContentChecksum() == contentChecksum) {
+        log.info("{}: dictionary content unchanged, keeping version {}", source.getName(),
+            current.getVersion());
+        next = current.withSource(sourceSize, sourceLastModified);
+      } else {
+        long version = current == null ? 1 : current.getVersion() + 1;
+        next = new DictionarySnapshot(buildIndex(dictionarySheetData), version, new Date(),
+            sourceSize, sourceLastModified, contentChecksum);
+        log.info("{}: dictionary version {} loaded", source.getName(), version);
+      }
+      snapshot.set(next);
+      return next;
+    }
+  }
+
+  private boolean isSourceUnchanged(DictionarySnapshot current, BasicFileAttributes attributes) {
+    return current != null
+        && attributes != null
+        && current.getSourceSize() == attributes.size()
+        && current.getSourceLastModified() == attributes.lastModifiedTime().toMillis();
+  }
+
+  private BasicFileAttributes readSourceAttributes(String docFilePath) {
+    try {
+      return Files.readAttributes(Paths.get(docFilePath), BasicFileAttributes.class);
+    } catch (IOException | InvalidPathException e) {
+      log.warn("can't read attributes of {}: {}", docFilePath, e.getMessage());
+      return null;
+    }
+  }
+
+  long checksum(SheetData dictionarySheetData) {
+    CRC32 crc32 = new CRC32();
+    dictionarySheetData.getSchema().getColumnIndex().forEach((name, column) -> {
+      crc32.update(String.valueOf(name).getBytes(UTF_8));
+      crc32.update(ByteBuffer.allocate(Integer.BYTES).putInt(column).array());
+    });
+    for (SheetRow row : dictionarySheetData.getData()) {
+      for (int column = 0; column < row.size(); column++) {
+        crc32.update(String.valueOf(row.get(column)).getBytes(UTF_8));
+        crc32.update(';');
+      }
+      crc32.update('\n');
+    }
+    return crc32.getValue();
+  }
+
+  List<RecipientDto> toRecipients(DictionaryDto dictionaryDto) {
     List<RecipientDto> recipients = new ArrayList<>();
     try {
-      DictionaryDto dictionaryDto = toDictionary(dictionarySheetData)
-          .stream()
+      List<RecipientDto> mainRecipients = stream(dictionaryDto.getEmail().split("\\s*;\\s*"))
+          .map(CommonUtils::formatContactString)
           .filter(
-              d -> hash == getOrderIndependentHash(d.getRegion(), d.getPartner(), d.getDealership())
-                  && isNotBlank(d.getEmail())
-          )
-          .findFirst()
-          .orElse(null);
-      if (!isNull(dictionaryDto)) {
-        List<RecipientDto> mainRecipients = stream(dictionaryDto.getEmail().split("\\s*;\\s*"))
+              andLogFilteredOutValues(CommonUtils::isEmailValid,
+                  s -> log.warn("invalid e-mail {} № {}", s, dictionaryDto.getNumber())))
+          .map(s -> new RecipientDto(s, dictionaryDto.getEmailCC(), true))
+          .collect(toList());
+      if (!mainRecipients.isEmpty()) {
+        recipients.addAll(mainRecipients);
+        stream(dictionaryDto.getEmailCC().split("\\s*;\\s*"))
             .map(CommonUtils::formatContactString)
             .filter(
                 andLogFilteredOutValues(CommonUtils::isEmailValid,
-                    s -> log.warn("invalid e-mail {} № {}", s, dictionaryDto.getNumber())))
-            .map(s -> new RecipientDto(s, dictionaryDto.getEmailCC(), true))
-            .collect(toList());
-        if (!mainRecipients.isEmpty()) {
-          recipients.addAll(mainRecipients);
-          stream(dictionaryDto.getEmailCC().split("\\s*;\\s*"))
-              .map(CommonUtils::formatContactString)
-              .filter(
-                  andLogFilteredOutValues(CommonUtils::isEmailValid,
-                      s -> log.warn("invalid e-mail копия {} № {}", s, dictionaryDto.getNumber())))
-              .map(s -> new RecipientDto(s, dictionaryDto.getEmailCC()))
-              .collect(toCollection(() -> recipients));
-        }
+                    s -> log.warn("invalid e-mail копия {} № {}", s, dictionaryDto.getNumber())))
+            .map(s -> new RecipientDto(s, dictionaryDto.getEmailCC()))
+            .collect(toCollection(() -> recipients));
       }
     } catch (RuntimeException e) {
       log.error(e.getMessage());
     }
-    return recipients;
+    return unmodifiableList(recipients);
   }
 
+  static final class Columns {
+
+    final int number;
+    final int partner;
+    final int dealership;
+    final int region;
+    final int email;
+    final int emailCC;
+
+    Columns(SheetSchema schema) {
+      number = schema.columnOf("№");
+      partner = schema.columnOf("Партнер");
+      dealership = schema.columnOf("Дилерский центр");
+      region = schema.columnOf("Регион");
+      email = schema.columnOf("e-mail");
+      emailCC = schema.columnOf("e-mail копия");
+    }
+  }
 }
@@ -0,0 +1,32 @@
+package ru.metlife.integration.service;
+
+import java.util.Date;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Immutable version of the compiled dictionary together with the workbook state it was built
+ * from. A new instance is published on every reload, the index is never modified in place.
+ */
+@Getter
+@AllArgsConstructor
+@ToString(exclude = "dictionaryIndex")
+public class DictionarySnapshot {
+
+  private final DictionaryIndex dictionaryIndex;
+  private final long version;
+  private final Date loadedAt;
+  private final long sourceSize;
+  private final long sourceLastModified;
+  private final long contentChecksum;
+
+  DictionarySnapshot withSource(long sourceSize, long sourceLastModified) {
+    return new DictionarySnapshot(dictionaryIndex, version, loadedAt, sourceSize,
+        sourceLastModified, contentChecksum);
+  }
+
+  public long getAgeMillis() {
+    return System.currentTimeMillis() - loadedAt.getTime();
+  }
+}
@@ -1,119 +1,316 @@
 package ru.metlife.integration.service;
 
-import static java.util.stream.Collectors.toList;
-import static ru.metlife.integration.util.CommonUtils.getOrderIndependentHash;
-
 import java.util.List;
-import javax.annotation.PostConstruct;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.SerializationUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import ru.metlife.integration.dto.DeliveryDataDto;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.dto.LetterDto;
 import ru.metlife.integration.dto.OrderDto;
-import ru.metlife.integration.dto.RecipientDto;
+import ru.metlife.integration.service.WorkbookStagingService.StagedWorkbook;
 import ru.metlife.integration.service.xssf.OrderRowContentCallback;
+import ru.metlife.integration.service.xssf.SheetRow;
+import ru.metlife.integration.service.xssf.WorkbookSession;
 import ru.metlife.integration.service.xssf.XlsService;
-import ru.metlife.integration.service.xssf.XlsService.SheetData;
 
 
 @Service
 @Slf4j
 public class DocumentExportService {
 
-  @Value("${fi-cong-integration.doc-file-path}")
-  private String docFilePath;
+  private static final String EXPORT_JOB = "exportDocument";
+  /**
+   * Checkpoint position of a run that went through the whole workbook.
+   */
+  private static final long EXPORT_COMPLETED = Long.MAX_VALUE;
+  private static final String STATUS_SYNC_PARTITION = "deliveryStatus:";
 
-  private XlsService xlsService;
+  @Value("${fi-cong-integration.commit-chunk-size:500}")
+  private int commitChunkSize;
+  @Value("${fi-cong-integration.pipeline-queue-capacity:1000}")
+  private int pipelineQueueCapacity;
+  @Value("${fi-cong-integration.persist-workers:4}")
+  private int persistWorkers;
+  @Value("${fi-cong-integration.status-sync-incremental:false}")
+  private boolean statusSyncIncremental;
 
   private OrderService orderService;
-  private DataFiTimeFreezeService dataFiTimeFreezeService;
   private DictionaryService dictionaryService;
   private DeliveryDataService deliveryDataService;
+  private DataFiTimeFreezeService dataFiTimeFreezeService;
+  private OrderBatchWriter orderBatchWriter;
+  private JobCheckpointService jobCheckpointService;
+  private DeliveryStatusSynchronizer deliveryStatusSynchronizer;
+  private WorkbookStagingService workbookStagingService;
+  private TransactionTemplate transactionTemplate;
+  private ExportMetrics exportMetrics;
+  private JobLeaseService jobLeaseService;
+  private ClusterMembershipService clusterMembershipService;
+  private LetterFanOut letterFanOut;
+  private final Set<String> runningExports = ConcurrentHashMap.newKeySet();
 
   @Autowired
   public DocumentExportService(OrderService orderService,
-      DataFiTimeFreezeService dataFiTimeFreezeService,
       DictionaryService dictionaryService,
-      DeliveryDataService deliveryDataService) {
+      DeliveryDataService deliveryDataService,
+      DataFiTimeFreezeService dataFiTimeFreezeService,
+      OrderBatchWriter orderBatchWriter,
+      JobCheckpointService jobCheckpointService,
+      DeliveryStatusSynchronizer deliveryStatusSynchronizer,
+      WorkbookStagingService workbookStagingService,
+      PlatformTransactionManager transactionManager,
+      ExportMetrics exportMetrics,
+      JobLeaseService jobLeaseService,
+      ClusterMembershipService clusterMembershipService) {
     this.orderService = orderService;
-    this.dataFiTimeFreezeService = dataFiTimeFreezeService;
     this.dictionaryService = dictionaryService;
     this.deliveryDataService = deliveryDataService;
+    this.dataFiTimeFreezeService = dataFiTimeFreezeService;
+    this.orderBatchWriter = orderBatchWriter;
+    this.jobCheckpointService = jobCheckpointService;
+    this.deliveryStatusSynchronizer = deliveryStatusSynchronizer;
+    this.workbookStagingService = workbookStagingService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.exportMetrics = exportMetrics;
+    this.jobLeaseService = jobLeaseService;
+    this.clusterMembershipService = clusterMembershipService;
+    this.letterFanOut = new LetterFanOut(dictionaryService);
   }
 
-  @PostConstruct
-  public void init() {
-    xlsService = new XlsService(docFilePath);
+  public void exportDocument(ExportSource source) {
+    try {
+      exportDocument(source, new ExportProgress(source.getName()), null);
+    } catch (RuntimeException e) {
+      log.error("{}: {}", source.getName(), e.getMessage());
+    }
   }
 
-  List<OrderDto> getOrdersToExport(SheetData sheetData) {
-    SheetData dictionarySheetData = dictionaryService.processSheet();
-    return orderService.toOrderDto(sheetData)
-        .stream()
-        .flatMap(o -> {
-          List<RecipientDto> recipients = dictionaryService
-              .getRecipientsFromDictionary(dictionarySheetData,
-                  getOrderIndependentHash(o.getDealership(), o.getPartner(), o.getRegion()));
-          return recipients.stream()
-              .map(r -> {
-                OrderDto newOrder = SerializationUtils.clone(o);
-                newOrder.setRecipient(r.getEmail());
-                newOrder.setEmailCC(r.getEmailCC());
-                return newOrder;
-              });
-        })
-        .collect(toList());
+  /**
+   * Streams the order sheet through an {@link ExportPipeline}: rows are resolved and persisted
+   * on their own threads while the workbook is still being parsed. Persistence happens outside
+   * of the parse, in chunks of {@code commit-chunk-size} written by {@code persist-workers}
+   * threads, each chunk in its own transaction. The checkpoint follows the last row of the
+   * contiguous committed chunks; an interrupted run resumes after that row as long as the
+   * workbook is unchanged, and skips rows of later chunks that did commit by their
+   * fingerprints.
+   *
+   * <p>The workbook is parsed from a local copy made by {@link WorkbookStagingService}; if its
+   * checksum equals the one of the last completed run, there is nothing new and the run ends
+   * right after staging.
+   *
+   * <p>Failures are rethrown. A cancelled run throws
+   * {@link java.util.concurrent.CancellationException} and resumes after its last committed
+   * chunk next time.
+   *
+   * <p>With a lease every chunk and checkpoint transaction first checks that the lease is still
+   * held, so a run whose lease was taken over by another node can't commit anything more.
+   */
+  public void exportDocument(ExportSource source, ExportProgress progress, JobLease lease) {
+    if (!runningExports.add(source.getName())) {
+      log.warn("{}: exportDocument is already running, skipped", source.getName());
+      return;
+    }
+    log.info("{}: start exportDocument", source.getName());
+    String jobName = EXPORT_JOB + ":" + source.getName();
+    try {
+      try (StagedWorkbook stagedWorkbook = exportMetrics
+          .time("export.workbook.stage", () -> workbookStagingService.stage(source))) {
+        String sourceMarker = stagedWorkbook.getChecksum();
+        long position = jobCheckpointService.getPosition(jobName, sourceMarker, -1);
+        if (position == EXPORT_COMPLETED) {
+          log.info("{}: workbook unchanged since the last export, skipped", source.getName());
+          return;
+        }
+        int lastExportedRowNum = (int) position;
+        if (lastExportedRowNum >= 0) {
+          log.info("{}: resuming after row {}", source.getName(), lastExportedRowNum);
+        }
+        Predicate<SheetRow> exported = isExported(source,
+            dataFiTimeFreezeService.findExportedFingerprints(),
+            deliveryDataService.findExportedPpNums());
+        progress.checkNotCancelled();
+        try (WorkbookSession workbookSession = exportMetrics.time("export.workbook.open",
+            () -> new XlsService(stagedWorkbook.getLocalPath()).openSession())) {
+          DictionaryIndex dictionaryIndex = exportMetrics.time("export.dictionary.build",
+              () -> dictionaryService.getDictionaryIndex(source, workbookSession));
+          try (ExportPipeline pipeline = new ExportPipeline(pipelineQueueCapacity, commitChunkSize,
+              persistWorkers, row -> resolve(source, row, dictionaryIndex),
+              chunk -> persistChunk(jobName, chunk, lease),
+              rowNum -> saveCheckpoint(jobName, rowNum, sourceMarker, lease), progress)) {
+            // includes the time the parser is blocked by the slower stages of the pipeline
+            exportMetrics.time("export.sheet.parse", () -> workbookSession
+                .processSheet(source.getOrderSheetName(), 0, source.getOrderHeaderRowNum(),
+                    new OrderRowContentCallback(dictionaryService, exported, dictionaryIndex,
+                        lastExportedRowNum, pipeline::submit, exportMetrics, progress)));
+            pipeline.finish();
+            log.info("{}: {} rows parsed, {} resolved", source.getName(),
+                progress.getRowsParsed(), progress.getRowsResolved());
+          }
+        }
+        long lettersPersisted = progress.getLettersPersisted().get();
+        if (lettersPersisted > 0) {
+          log.info("{}: orders exported {}", source.getName(), lettersPersisted);
+          log.info("{}: document export completed!", source.getName());
+        } else {
+          log.info("{}: exportDocument: Nothing to export", source.getName());
+        }
+        saveCheckpoint(jobName, EXPORT_COMPLETED, sourceMarker, lease);
+      }
+    } finally {
+      progress.finished();
+      runningExports.remove(source.getName());
+    }
   }
 
-  @Scheduled(cron = "${fi-cong-integration.export-order-cron}")
-  @Transactional
-  public void exportDocument() {
-    log.info("start exportDocument");
-    try {
-      SheetData sheetData = xlsService
-          .processSheet("Общая", 0, 0,
-              new OrderRowContentCallback(dictionaryService, deliveryDataService));
-      List<OrderDto> listOrders = getOrdersToExport(sheetData);
-      if (!listOrders.isEmpty()) {
-        log.info("Orders to export {}", listOrders.size());
-        listOrders.forEach(orderDto -> {
-          orderService.saveOrder(orderDto);
-          dataFiTimeFreezeService.saveOrder(orderDto);
-          deliveryDataService.saveDeliveryData(deliveryDataService.toDeliveryDataDto(orderDto));
-        });
-        log.info("document export completed!");
-      } else {
-        log.info("exportDocument: Nothing to export");
+  /**
+   * Dry run of {@link #exportDocument(ExportSource, ExportProgress, JobLease)}: the staged
+   * workbook is parsed, filtered and resolved the same way, starting after the checkpoint, and
+   * every letter is handed to the consumer as soon as its row is resolved, on the calling
+   * thread. Nothing is persisted, no letter is kept and no export metric is recorded. Returns
+   * the number of letters.
+   */
+  public long previewExport(ExportSource source, Consumer<LetterDto> consumer) {
+    String jobName = EXPORT_JOB + ":" + source.getName();
+    long[] letters = new long[1];
+    try (StagedWorkbook stagedWorkbook = workbookStagingService.stage(source)) {
+      long position = jobCheckpointService.getPosition(jobName, stagedWorkbook.getChecksum(), -1);
+      if (position == EXPORT_COMPLETED) {
+        return 0;
+      }
+      Predicate<SheetRow> exported = isExported(source,
+          dataFiTimeFreezeService.findExportedFingerprints(),
+          deliveryDataService.findExportedPpNums());
+      try (WorkbookSession workbookSession =
+          new XlsService(stagedWorkbook.getLocalPath()).openSession()) {
+        DictionaryIndex dictionaryIndex = dictionaryService
+            .getDictionaryIndex(source, workbookSession);
+        workbookSession.processSheet(source.getOrderSheetName(), 0, source.getOrderHeaderRowNum(),
+            new OrderRowContentCallback(dictionaryService, exported, dictionaryIndex,
+                (int) position, row -> {
+                  OrderDto order = orderService.toOrderDto(source, row);
+                  for (LetterDto letter : letterFanOut.fanOut(order, dictionaryIndex)) {
+                    consumer.accept(letter);
+                    letters[0]++;
+                  }
+                }, ExportMetrics.discarding(), new ExportProgress(source.getName())));
       }
-    } catch (RuntimeException e) {
-      log.error(e.getMessage());
     }
+    log.info("{}: previewExport: {} letters", source.getName(), letters[0]);
+    return letters[0];
+  }
+
+  private List<LetterDto> resolve(ExportSource source, SheetRow row,
+      DictionaryIndex dictionaryIndex) {
+    List<LetterDto> letters = exportMetrics.time("export.recipients.resolve",
+        () -> letterFanOut.fanOut(orderService.toOrderDto(source, row), dictionaryIndex));
+    exportMetrics.increment("export.letters.fanned_out", letters.size());
+    return letters;
+  }
+
+  /**
+   * A row is exported when its fingerprint is known. Rows exported before fingerprints existed
+   * are recognized by their pp_num together with the legacy MD5 entry hash; a known pp_num with
+   * a different hash is an edited row and is exported again.
+   */
+  Predicate<SheetRow> isExported(ExportSource source, Set<RowFingerprint> exportedFingerprints,
+      Set<String> exportedPpNums) {
+    return row -> exportedFingerprints.contains(orderService.fingerprint(source, row))
+        || (exportedPpNums.contains(orderService.getPpNum(source, row))
+            && exportedFingerprints.contains(orderService.legacyFingerprint(row)));
+  }
+
+  /**
+   * Writes every order of the chunk with its data_fi_time_freeze and delivery_data rows in one
+   * transaction.
+   */
+  void persistChunk(String jobName, List<LetterDto> chunk, JobLease lease) {
+    transactionTemplate.execute(status -> {
+      if (lease != null) {
+        jobLeaseService.checkHeldShared(lease);
+      }
+      orderBatchWriter.write(chunk);
+      return null;
+    });
+    log.info("{}: {} orders committed up to row {}", jobName, chunk.size(),
+        chunk.get(chunk.size() - 1).getRowNum());
+  }
+
+  private void saveCheckpoint(String jobName, long position, String sourceMarker,
+      JobLease lease) {
+    transactionTemplate.execute(status -> {
+      if (lease != null) {
+        jobLeaseService.checkHeld(lease);
+      }
+      jobCheckpointService.savePosition(jobName, position, sourceMarker);
+      return null;
+    });
   }
 
-  @Scheduled(cron = "${fi-cong-integration.update-delivery-status-cron}")
-  @Transactional
-  public void updateDeliveryStatus() {
+  /**
+   * Frequent sync. With {@code status-sync-incremental} enabled only orders changed since the
+   * previous run are looked at; {@link #reconcileDeliveryStatus()} covers the whole backlog.
+   * Returns the number of rows changed, failures are rethrown.
+   */
+  public int updateDeliveryStatus() {
     log.info("start updateDeliveryStatus");
-    try {
-      List<DeliveryDataDto> listDeliveryStatuses = deliveryDataService
-          .findByDeliveryStatus();
-      List<OrderDto> listOrders = listDeliveryStatuses.stream()
-          .map(deliveryDataDto -> orderService.findByOrderId(deliveryDataDto.getOrderId()))
-          .collect(toList());
-      if (!listOrders.isEmpty()) {
-        listOrders.forEach(orderDto -> {
-          deliveryDataService.updateStatus(orderDto.getDeliveryStatus(), orderDto.getOrderId());
-        });
-        log.info("update delivery status completed!");
-      } else {
-        log.info("updateDeliveryStatus: Nothing to update");
+    int updated = exportMetrics.time(
+        statusSyncIncremental ? "status.sync.incremental" : "status.sync.full",
+        () -> synchronizeStatus(statusSyncIncremental));
+    exportMetrics.increment("status.rows.updated", updated);
+    exportMetrics.refreshBacklog();
+    if (updated > 0) {
+      log.info("update delivery status completed! {} rows changed", updated);
+    } else {
+      log.info("updateDeliveryStatus: Nothing to update");
+    }
+    return updated;
+  }
+
+  public int reconcileDeliveryStatus() {
+    log.info("start reconcileDeliveryStatus");
+    int updated = exportMetrics.time("status.sync.full", () -> synchronizeStatus(false));
+    exportMetrics.increment("status.rows.updated", updated);
+    exportMetrics.refreshBacklog();
+    log.info("reconcile delivery status completed! {} rows changed", updated);
+    return updated;
+  }
+
+  /**
+   * Syncs the whole backlog, or with {@code status-sync-partitions} the partitions this node
+   * owns, each in its own transaction under a partition lease. A partition whose lease is held
+   * elsewhere is left to that node.
+   */
+  private int synchronizeStatus(boolean incremental) {
+    if (!clusterMembershipService.isPartitioned()) {
+      return incremental
+          ? deliveryStatusSynchronizer.synchronizeIncrementally()
+          : deliveryStatusSynchronizer.synchronize();
+    }
+    int partitionCount = clusterMembershipService.getPartitionCount();
+    int updated = 0;
+    for (int partition : clusterMembershipService.getOwnedPartitions()) {
+      JobLease lease = jobLeaseService
+          .tryAcquire(STATUS_SYNC_PARTITION + partition + "/" + partitionCount);
+      if (lease == null) {
+        log.info("status sync partition {} is busy on another node, skipped", partition);
+        continue;
+      }
+      try {
+        updated += incremental
+            ? deliveryStatusSynchronizer
+                .synchronizeIncrementally(partition, partitionCount, lease)
+            : deliveryStatusSynchronizer.synchronize(partition, partitionCount, lease);
+      } finally {
+        jobLeaseService.release(lease);
       }
-    } catch (RuntimeException e) {
-      log.error(e.getMessage());
     }
+    return updated;
   }
 }
@@ -0,0 +1,80 @@
+package ru.metlife.integration.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+
+/**
+ * One run of a job submitted through {@link ExportJobService}: an export of one or more
+ * sources or a delivery status sync. Jobs holding a common lock key never run at the same
+ * time; on this node by the lock keys themselves, across nodes by the {@link JobLease} of
+ * every key unless the job is not leased as a whole.
+ */
+@Getter
+public class ExportJob {
+
+  public enum State {
+    QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+  }
+
+  private final String id = UUID.randomUUID().toString();
+  private final String type;
+  @JsonIgnore
+  private final Set<String> lockKeys;
+  @JsonIgnore
+  private final boolean leased;
+  private final Map<String, ExportProgress> sources = new LinkedHashMap<>();
+  @JsonIgnore
+  private final Map<String, JobLease> leases = new ConcurrentHashMap<>();
+  private final Date submittedAt = new Date();
+  private volatile State state = State.QUEUED;
+  private volatile Date startedAt;
+  private volatile Date finishedAt;
+  private volatile Integer rowsUpdated;
+  private volatile String error;
+  @JsonIgnore
+  private volatile boolean cancelled;
+
+  ExportJob(String type, Set<String> lockKeys, boolean leased, Collection<String> sourceNames) {
+    this.type = type;
+    this.lockKeys = lockKeys;
+    this.leased = leased;
+    sourceNames.forEach(name -> sources.put(name, new ExportProgress(name)));
+  }
+
+  public boolean isFinished() {
+    return finishedAt != null;
+  }
+
+  synchronized void started() {
+    if (state == State.QUEUED) {
+      state = State.RUNNING;
+      startedAt = new Date();
+    }
+  }
+
+  void setRowsUpdated(int rowsUpdated) {
+    this.rowsUpdated = rowsUpdated;
+  }
+
+  synchronized void finished(State state, String error) {
+    this.state = state;
+    this.error = error;
+    this.finishedAt = new Date();
+  }
+
+  /**
+   * A queued job does not start; a running export stops at its next row or chunk. A running
+   * status sync is a single statement and completes anyway.
+   */
+  void cancel() {
+    cancelled = true;
+    sources.values().forEach(ExportProgress::cancel);
+  }
+}
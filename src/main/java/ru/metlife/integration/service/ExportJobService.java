@@ -0,0 +1,286 @@
+package ru.metlife.integration.service;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntSupplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.config.ExportSourcesProperties;
+import ru.metlife.integration.service.ExportJob.State;
+
+/**
+ * Runs exports and delivery status syncs asynchronously on the export worker pool and keeps
+ * their progress for the job API. Every job takes lock keys: one per exported source, one
+ * shared by both status syncs. A job whose keys are all held by a running job of the same type
+ * is coalesced into it; any other overlap is rejected with {@link JobConflictException}.
+ *
+ * <p>Every lock key is also taken as a {@link JobLease}, so of several nodes firing the same
+ * cron only one runs the job; a lease held by another node rejects the job the same way.
+ * Partitioned status syncs run on every node and lease their partitions instead.
+ */
+@Service
+@Slf4j
+public class ExportJobService {
+
+  public static final String EXPORT_DOCUMENT = "exportDocument";
+  public static final String UPDATE_DELIVERY_STATUS = "updateDeliveryStatus";
+  public static final String RECONCILE_DELIVERY_STATUS = "reconcileDeliveryStatus";
+  public static final String WRITE_BACK = "writeBack";
+  private static final String DELIVERY_STATUS_LOCK = "deliveryStatus";
+
+  @Value("${fi-cong-integration.job-history-size:100}")
+  private int jobHistorySize;
+
+  private DocumentExportService documentExportService;
+  private WorkbookWriteBackService workbookWriteBackService;
+  private ExportSourcesProperties exportSourcesProperties;
+  private AsyncTaskExecutor exportExecutor;
+  private JobLeaseService jobLeaseService;
+  private ClusterMembershipService clusterMembershipService;
+  // both guarded by this
+  private final Map<String, ExportJob> jobs = new LinkedHashMap<>();
+  private final Map<String, ExportJob> lockHolders = new HashMap<>();
+
+  @Autowired
+  public ExportJobService(DocumentExportService documentExportService,
+      WorkbookWriteBackService workbookWriteBackService,
+      ExportSourcesProperties exportSourcesProperties,
+      @Qualifier("exportExecutor") AsyncTaskExecutor exportExecutor,
+      JobLeaseService jobLeaseService,
+      ClusterMembershipService clusterMembershipService) {
+    this.documentExportService = documentExportService;
+    this.workbookWriteBackService = workbookWriteBackService;
+    this.exportSourcesProperties = exportSourcesProperties;
+    this.exportExecutor = exportExecutor;
+    this.jobLeaseService = jobLeaseService;
+    this.clusterMembershipService = clusterMembershipService;
+  }
+
+  public ExportJob submitExport() {
+    return submitExport(exportSourcesProperties.getExportSources());
+  }
+
+  /**
+   * Exports the given sources concurrently, at most {@code export-workers} at a time.
+   */
+  public ExportJob submitExport(List<ExportSource> sources) {
+    ExportJob job = new ExportJob(EXPORT_DOCUMENT,
+        sources.stream()
+            .map(source -> EXPORT_DOCUMENT + ":" + source.getName())
+            .collect(toCollection(LinkedHashSet::new)),
+        true,
+        sources.stream().map(ExportSource::getName).collect(toList()));
+    ExportJob runningJob = acquire(job);
+    if (runningJob != null) {
+      return runningJob;
+    }
+    CompletableFuture<?>[] exports = sources.stream()
+        .map(source -> runAsync(job, () -> documentExportService
+            .exportDocument(source, job.getSources().get(source.getName()),
+                job.getLeases().get(EXPORT_DOCUMENT + ":" + source.getName()))))
+        .toArray(CompletableFuture[]::new);
+    CompletableFuture.allOf(exports).whenComplete((result, e) -> release(job, e));
+    return job;
+  }
+
+  public ExportJob submitUpdateDeliveryStatus() {
+    return submitStatusSync(UPDATE_DELIVERY_STATUS, documentExportService::updateDeliveryStatus);
+  }
+
+  public ExportJob submitReconcileDeliveryStatus() {
+    return submitStatusSync(RECONCILE_DELIVERY_STATUS,
+        documentExportService::reconcileDeliveryStatus);
+  }
+
+  /**
+   * Writes the delivery statuses back into a copy of every source workbook, one source after
+   * another. The job reports the number of rows changed over all sources.
+   */
+  public ExportJob submitWriteBack() {
+    List<ExportSource> sources = exportSourcesProperties.getExportSources();
+    ExportJob job = new ExportJob(WRITE_BACK,
+        sources.stream()
+            .map(source -> WRITE_BACK + ":" + source.getName())
+            .collect(toCollection(LinkedHashSet::new)),
+        true, emptyList());
+    ExportJob runningJob = acquire(job);
+    if (runningJob != null) {
+      return runningJob;
+    }
+    runAsync(job, () -> job.setRowsUpdated(sources.stream()
+        .mapToInt(workbookWriteBackService::writeBack)
+        .sum()))
+        .whenComplete((result, e) -> release(job, e));
+    return job;
+  }
+
+  public synchronized ExportJob getJob(String id) {
+    return jobs.get(id);
+  }
+
+  /**
+   * Running and recently finished jobs, newest first.
+   */
+  public synchronized List<ExportJob> getJobs() {
+    List<ExportJob> result = new ArrayList<>(jobs.values());
+    Collections.reverse(result);
+    return result;
+  }
+
+  /**
+   * Returns the job, {@code null} if it is unknown.
+   */
+  public ExportJob cancel(String id) {
+    ExportJob job = getJob(id);
+    if (job != null && !job.isFinished()) {
+      log.info("{} {}: cancel requested", job.getType(), job.getId());
+      job.cancel();
+    }
+    return job;
+  }
+
+  private ExportJob submitStatusSync(String type, IntSupplier statusSync) {
+    ExportJob job = new ExportJob(type, singleton(DELIVERY_STATUS_LOCK),
+        !clusterMembershipService.isPartitioned(), emptyList());
+    ExportJob runningJob = acquire(job);
+    if (runningJob != null) {
+      return runningJob;
+    }
+    runAsync(job, () -> job.setRowsUpdated(statusSync.getAsInt()))
+        .whenComplete((result, e) -> release(job, e));
+    return job;
+  }
+
+  private CompletableFuture<Void> runAsync(ExportJob job, Runnable task) {
+    try {
+      return CompletableFuture.runAsync(() -> {
+        if (job.isCancelled()) {
+          throw new CancellationException(job.getType() + " cancelled before it started");
+        }
+        job.started();
+        task.run();
+      }, exportExecutor);
+    } catch (RuntimeException e) {
+      CompletableFuture<Void> rejected = new CompletableFuture<>();
+      rejected.completeExceptionally(e);
+      return rejected;
+    }
+  }
+
+  /**
+   * Registers the job and takes its lock keys and their leases. Returns the running job it is
+   * coalesced into, {@code null} if the job is new.
+   */
+  private ExportJob acquire(ExportJob job) {
+    ExportJob runningJob = acquireLocally(job);
+    if (runningJob != null) {
+      return runningJob;
+    }
+    if (!job.isLeased()) {
+      return null;
+    }
+    try {
+      for (String key : job.getLockKeys()) {
+        JobLease lease = jobLeaseService.tryAcquire(key);
+        if (lease == null) {
+          throw new JobConflictException(
+              job.getType() + ": lease " + key + " is held by another node");
+        }
+        job.getLeases().put(key, lease);
+      }
+    } catch (RuntimeException e) {
+      release(job, e);
+      synchronized (this) {
+        jobs.remove(job.getId());
+      }
+      throw e;
+    }
+    return null;
+  }
+
+  private synchronized ExportJob acquireLocally(ExportJob job) {
+    Set<ExportJob> holders = job.getLockKeys()
+        .stream()
+        .map(lockHolders::get)
+        .filter(Objects::nonNull)
+        .collect(toSet());
+    if (holders.isEmpty()) {
+      job.getLockKeys().forEach(key -> lockHolders.put(key, job));
+      jobs.put(job.getId(), job);
+      evictFinishedJobs();
+      log.info("{} {}: submitted", job.getType(), job.getId());
+      return null;
+    }
+    ExportJob holder = holders.iterator().next();
+    if (holders.size() == 1
+        && holder.getType().equals(job.getType())
+        && holder.getLockKeys().containsAll(job.getLockKeys())
+        && !holder.isCancelled()) {
+      log.info("{}: coalesced into running job {}", job.getType(), holder.getId());
+      return holder;
+    }
+    throw new JobConflictException(job.getType(), holder);
+  }
+
+  private void release(ExportJob job, Throwable e) {
+    job.getLeases().values().forEach(jobLeaseService::release);
+    synchronized (this) {
+      job.getLockKeys().forEach(key -> lockHolders.remove(key, job));
+    }
+    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+    Throwable cancel = cancelCause(cause);
+    if (cause == null) {
+      job.finished(State.COMPLETED, null);
+      log.info("{} {}: completed", job.getType(), job.getId());
+    } else if (cancel != null) {
+      job.finished(State.CANCELLED, cancel.getMessage());
+      log.info("{} {}: {}", job.getType(), job.getId(), cancel.getMessage());
+    } else {
+      job.finished(State.FAILED, cause.getMessage());
+      log.error("{} {}: {}", job.getType(), job.getId(), cause.getMessage());
+    }
+  }
+
+  /**
+   * The cancel or lease conflict anywhere in the cause chain, {@code null} if there is none.
+   */
+  private static Throwable cancelCause(Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CancellationException || cause instanceof JobConflictException) {
+        return cause;
+      }
+    }
+    return null;
+  }
+
+  private void evictFinishedJobs() {
+    Iterator<ExportJob> oldestFirst = jobs.values().iterator();
+    while (jobs.size() > jobHistorySize && oldestFirst.hasNext()) {
+      if (oldestFirst.next().isFinished()) {
+        oldestFirst.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package ru.metlife.integration.service;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stage timers and row counters of the export and status sync jobs, published on the actuator
+ * {@code /metrics} endpoint. Every timer {@code x} is exposed as {@code timer.x.last} (duration
+ * of the last call), {@code timer.x.total} (all calls since start, both in milliseconds) and
+ * {@code timer.x.count}; every counter {@code y} as {@code counter.y}. The delivery backlog is
+ * counted after every status sync and when the metrics are read and the last count is older
+ * than {@code backlog-ttl-ms}, as the count scans delivery_data.
+ */
+@Component
+@Slf4j
+public class ExportMetrics implements PublicMetrics {
+
+  private static final String BACKLOG_SQL = "select count(*) from delivery_data"
+      + " where delivery_status is null or delivery_status <> 'COMPLETED'";
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+  @Value("${fi-cong-integration.backlog-ttl-ms:60000}")
+  private long backlogTtlMs;
+
+  private Long backlog;
+  private long backlogCountedAt;
+
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public ExportMetrics(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Metrics of a run that must not count as an export, such as a preview; every value is
+   * dropped.
+   */
+  public static ExportMetrics discarding() {
+    return new ExportMetrics(null) {
+      @Override
+      public void increment(String counter, long delta) {
+      }
+
+      @Override
+      public void record(String timer, long nanos) {
+      }
+
+      @Override
+      public void refreshBacklog() {
+      }
+    };
+  }
+
+  public void increment(String counter) {
+    increment(counter, 1);
+  }
+
+  public void increment(String counter, long delta) {
+    counters.computeIfAbsent(counter, name -> new LongAdder()).add(delta);
+  }
+
+  public <T> T time(String timer, Supplier<T> stage) {
+    long started = System.nanoTime();
+    try {
+      return stage.get();
+    } finally {
+      record(timer, System.nanoTime() - started);
+    }
+  }
+
+  public void record(String timer, long nanos) {
+    timers.computeIfAbsent(timer, name -> new Timer()).record(nanos);
+  }
+
+  /**
+   * Counts the delivery backlog now; a failed count keeps the previous value.
+   */
+  public synchronized void refreshBacklog() {
+    try {
+      backlog = jdbcTemplate.queryForObject(BACKLOG_SQL, Long.class);
+    } catch (DataAccessException e) {
+      log.warn("can't count delivery backlog: {}", e.getMessage());
+    }
+    backlogCountedAt = System.nanoTime();
+  }
+
+  private synchronized Long getBacklog() {
+    if (backlog == null
+        || System.nanoTime() - backlogCountedAt > MILLISECONDS.toNanos(backlogTtlMs)) {
+      refreshBacklog();
+    }
+    return backlog;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>();
+    counters.forEach((name, value) -> metrics.add(new Metric<>("counter." + name, value.sum())));
+    timers.forEach((name, timer) -> {
+      metrics.add(new Metric<>("timer." + name + ".last", NANOSECONDS.toMillis(timer.last)));
+      metrics.add(new Metric<>("timer." + name + ".total",
+          NANOSECONDS.toMillis(timer.total.sum())));
+      metrics.add(new Metric<>("timer." + name + ".count", timer.count.sum()));
+    });
+    Long backlog = getBacklog();
+    if (backlog != null) {
+      metrics.add(new Metric<>("gauge.delivery.backlog", backlog));
+    }
+    return metrics;
+  }
+
+  private static final class Timer {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private volatile long last;
+
+    void record(long nanos) {
+      count.increment();
+      total.add(nanos);
+      last = nanos;
+    }
+  }
+}
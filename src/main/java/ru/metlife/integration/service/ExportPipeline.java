@@ -0,0 +1,265 @@
+package ru.metlife.integration.service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import ru.metlife.integration.dto.LetterDto;
+import ru.metlife.integration.service.xssf.SheetRow;
+import ru.metlife.integration.service.xssf.SheetSchema;
+
+/**
+ * Three stage export pipeline: the sheet parser submits accepted rows, a resolver thread turns
+ * every row into the letters of its order and a persister thread cuts them into chunks that end
+ * on a row boundary. Stages are connected by bounded queues, so a slow stage blocks the
+ * previous one instead of letting rows pile up in memory.
+ *
+ * <p>Chunks are written by a work-stealing pool of {@code persistWorkers} threads, each chunk in
+ * its own transaction on the connection of its worker, at most two chunks per worker in flight.
+ * Chunks may commit out of order, so the checkpoint is only moved to the last row of the
+ * contiguous prefix of committed chunks.
+ */
+class ExportPipeline implements Closeable {
+
+  private static final SheetRow END_OF_ROWS = new SheetRow(new SheetSchema());
+  private static final List<LetterDto> END_OF_ORDERS = new ArrayList<>();
+  private static final long POLL_MILLIS = 100;
+  private static final AtomicInteger PIPELINE_COUNTER = new AtomicInteger();
+
+  private final BlockingQueue<SheetRow> rowQueue;
+  private final BlockingQueue<List<LetterDto>> orderQueue;
+  private final Function<SheetRow, List<LetterDto>> resolver;
+  private final Consumer<List<LetterDto>> persister;
+  private final IntConsumer checkpointer;
+  private final int chunkSize;
+  private final ExecutorService executorService;
+  private final ForkJoinPool persistPool;
+  private final Semaphore chunksInFlight;
+  private final int maxChunksInFlight;
+  private final Future<?> resolverFuture;
+  private final Future<?> persisterFuture;
+
+  private final ExportProgress progress;
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+  private volatile boolean aborted;
+
+  // guarded by committedChunks
+  private final TreeMap<Long, Integer> committedChunks = new TreeMap<>();
+  private long nextCheckpointChunk;
+  private long chunkCount;
+
+  /**
+   * @param persister writes a chunk in its own transaction
+   * @param checkpointer saves the last row of the contiguous prefix of committed chunks
+   */
+  ExportPipeline(int queueCapacity, int chunkSize, int persistWorkers,
+      Function<SheetRow, List<LetterDto>> resolver,
+      Consumer<List<LetterDto>> persister, IntConsumer checkpointer, ExportProgress progress) {
+    this.rowQueue = new ArrayBlockingQueue<>(queueCapacity);
+    this.orderQueue = new ArrayBlockingQueue<>(queueCapacity);
+    this.resolver = resolver;
+    this.persister = persister;
+    this.checkpointer = checkpointer;
+    this.chunkSize = chunkSize;
+    this.progress = progress;
+    this.maxChunksInFlight = 2 * persistWorkers;
+    this.chunksInFlight = new Semaphore(maxChunksInFlight);
+    int pipelineNum = PIPELINE_COUNTER.incrementAndGet();
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executorService = Executors.newFixedThreadPool(2, r -> {
+      Thread thread = new Thread(r,
+          "export-pipeline-" + pipelineNum + "-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.persistPool = new ForkJoinPool(persistWorkers, pool -> {
+      ForkJoinWorkerThread thread =
+          ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("export-persist-" + pipelineNum + "-" + threadCounter.incrementAndGet());
+      return thread;
+    }, null, true);
+    this.resolverFuture = executorService.submit(this::resolve);
+    this.persisterFuture = executorService.submit(this::persist);
+  }
+
+  /**
+   * Called from the parser thread; blocks while the resolver is behind.
+   */
+  void submit(SheetRow row) {
+    put(rowQueue, row);
+    progress.getRowsParsed().incrementAndGet();
+  }
+
+  /**
+   * Signals the end of the sheet and waits until every submitted row is persisted. Rethrows the
+   * first failure of any stage, a cancel as the {@link CancellationException} itself.
+   */
+  void finish() {
+    put(rowQueue, END_OF_ROWS);
+    await(resolverFuture);
+    await(persisterFuture);
+    acquire(maxChunksInFlight);
+    checkNotAborted();
+  }
+
+  @Override
+  public void close() {
+    aborted = true;
+    executorService.shutdownNow();
+    persistPool.shutdownNow();
+  }
+
+  private void resolve() {
+    try {
+      SheetRow row;
+      while ((row = take(rowQueue)) != END_OF_ROWS) {
+        List<LetterDto> letters = resolver.apply(row);
+        progress.getRowsResolved().incrementAndGet();
+        if (!letters.isEmpty()) {
+          put(orderQueue, letters);
+        }
+      }
+      put(orderQueue, END_OF_ORDERS);
+    } catch (RuntimeException e) {
+      fail(e);
+    }
+  }
+
+  private void persist() {
+    try {
+      List<LetterDto> chunk = new ArrayList<>(chunkSize);
+      List<LetterDto> letters;
+      while ((letters = take(orderQueue)) != END_OF_ORDERS) {
+        chunk.addAll(letters);
+        if (chunk.size() >= chunkSize) {
+          flush(chunk);
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+      if (!chunk.isEmpty()) {
+        flush(chunk);
+      }
+    } catch (RuntimeException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Hands the chunk to the persist pool; blocks while all workers have a chunk queued.
+   */
+  private void flush(List<LetterDto> chunk) {
+    progress.checkNotCancelled();
+    acquire(1);
+    long chunkNum = chunkCount++;
+    persistPool.execute(() -> {
+      try {
+        checkNotAborted();
+        progress.checkNotCancelled();
+        persister.accept(chunk);
+        progress.getLettersPersisted().addAndGet(chunk.size());
+        committed(chunkNum, chunk.get(chunk.size() - 1).getRowNum());
+      } catch (RuntimeException e) {
+        fail(e);
+      } finally {
+        chunksInFlight.release();
+      }
+    });
+  }
+
+  private void committed(long chunkNum, int lastRowNum) {
+    synchronized (committedChunks) {
+      committedChunks.put(chunkNum, lastRowNum);
+      Integer checkpointRowNum = null;
+      while (committedChunks.containsKey(nextCheckpointChunk)) {
+        checkpointRowNum = committedChunks.remove(nextCheckpointChunk++);
+      }
+      if (checkpointRowNum != null) {
+        checkpointer.accept(checkpointRowNum);
+      }
+    }
+  }
+
+  private void acquire(int permits) {
+    try {
+      while (!chunksInFlight.tryAcquire(permits, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        checkNotAborted();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("export pipeline interrupted", e);
+    }
+  }
+
+  private <T> void put(BlockingQueue<T> queue, T item) {
+    try {
+      while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        checkNotAborted();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("export pipeline interrupted", e);
+    }
+  }
+
+  private <T> T take(BlockingQueue<T> queue) {
+    try {
+      T item;
+      while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+        checkNotAborted();
+      }
+      return item;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("export pipeline interrupted", e);
+    }
+  }
+
+  private void fail(RuntimeException e) {
+    failure.compareAndSet(null, e);
+    aborted = true;
+  }
+
+  private void checkNotAborted() {
+    RuntimeException cause = failure.get();
+    if (cause instanceof CancellationException) {
+      throw cause;
+    }
+    if (cause != null) {
+      throw new IllegalStateException("export pipeline failed: " + cause.getMessage(), cause);
+    }
+    if (aborted) {
+      throw new IllegalStateException("export pipeline aborted");
+    }
+  }
+
+  private void await(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("export pipeline interrupted", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package ru.metlife.integration.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+
+/**
+ * Live counters of the export of one source, updated by the parser and the pipeline threads
+ * and read by the job API. The ETA is extrapolated from the parser position in the sheet; the
+ * bounded pipeline queues keep resolution and persistence close behind it.
+ */
+@Getter
+public class ExportProgress {
+
+  private final String source;
+  private final AtomicLong rowsRead = new AtomicLong();
+  private final AtomicLong rowsParsed = new AtomicLong();
+  private final AtomicLong rowsResolved = new AtomicLong();
+  private final AtomicLong lettersPersisted = new AtomicLong();
+  private volatile int firstRowNum = -1;
+  private volatile int currentRowNum = -1;
+  private volatile int lastRowNum = -1;
+  private volatile Date parseStartedAt;
+  private volatile Date finishedAt;
+  @JsonIgnore
+  private volatile boolean cancelled;
+
+  public ExportProgress(String source) {
+    this.source = source;
+  }
+
+  public void sheetDimension(int lastRowNum) {
+    this.lastRowNum = lastRowNum;
+  }
+
+  public void rowRead(int rowNum) {
+    if (firstRowNum < 0) {
+      firstRowNum = rowNum;
+      parseStartedAt = new Date();
+    }
+    currentRowNum = rowNum;
+    rowsRead.incrementAndGet();
+  }
+
+  void finished() {
+    finishedAt = new Date();
+  }
+
+  /**
+   * Asks the export to stop; it does so at the next row it reads or hands over.
+   */
+  void cancel() {
+    cancelled = true;
+  }
+
+  public void checkNotCancelled() {
+    if (cancelled) {
+      throw new CancellationException(source + ": export cancelled");
+    }
+  }
+
+  /**
+   * Seconds until the parser reaches the last row of the sheet, {@code null} while unknown.
+   */
+  public Long getEtaSeconds() {
+    Date started = parseStartedAt;
+    int done = currentRowNum - firstRowNum;
+    int remaining = lastRowNum - currentRowNum;
+    if (finishedAt != null || started == null || done <= 0 || remaining < 0) {
+      return null;
+    }
+    long elapsedMillis = System.currentTimeMillis() - started.getTime();
+    return elapsedMillis * remaining / done / 1000;
+  }
+}
@@ -0,0 +1,17 @@
+package ru.metlife.integration.service;
+
+import java.util.List;
+
+/**
+ * Source of primary keys for {@code orders}, {@code data_fi_time_freeze} and
+ * {@code delivery_data}. Ids are strings of at most 36 characters.
+ */
+public interface IdGenerator {
+
+  String nextId();
+
+  /**
+   * {@code count} ids at once, cheaper than calling {@link #nextId()} for each.
+   */
+  List<String> nextIds(int count);
+}
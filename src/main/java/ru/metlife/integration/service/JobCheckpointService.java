@@ -0,0 +1,49 @@
+package ru.metlife.integration.service;
+
+import static java.util.Objects.isNull;
+
+import java.util.Date;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.metlife.integration.entity.JobCheckpointEntity;
+import ru.metlife.integration.repository.JobCheckpointRepository;
+
+/**
+ * Persistent progress marker of a job. The position is only trusted while the source marker
+ * (e.g. size and modification time of the workbook) matches the one it was saved with.
+ */
+@Service
+public class JobCheckpointService {
+
+  private JobCheckpointRepository jobCheckpointRepository;
+
+  @Autowired
+  public JobCheckpointService(JobCheckpointRepository jobCheckpointRepository) {
+    this.jobCheckpointRepository = jobCheckpointRepository;
+  }
+
+  @Transactional(readOnly = true)
+  public long getPosition(String jobName, String sourceMarker, long defaultPosition) {
+    JobCheckpointEntity checkpoint = jobCheckpointRepository.findOne(jobName);
+    if (isNull(checkpoint) || isNull(sourceMarker)
+        || !Objects.equals(sourceMarker, checkpoint.getSourceMarker())) {
+      return defaultPosition;
+    }
+    return checkpoint.getLastPosition();
+  }
+
+  @Transactional
+  public void savePosition(String jobName, long position, String sourceMarker) {
+    jobCheckpointRepository
+        .save(new JobCheckpointEntity(jobName, position, sourceMarker, new Date()));
+  }
+
+  @Transactional
+  public void clear(String jobName) {
+    if (jobCheckpointRepository.exists(jobName)) {
+      jobCheckpointRepository.delete(jobName);
+    }
+  }
+}
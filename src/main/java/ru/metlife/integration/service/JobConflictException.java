@@ -0,0 +1,23 @@
+package ru.metlife.integration.service;
+
+import lombok.Getter;
+
+/**
+ * A job can't be submitted because another job holds some of its lock keys: a job of this node,
+ * returned by {@link #getRunningJob()}, or a job of another node, then that is {@code null}.
+ */
+@Getter
+public class JobConflictException extends RuntimeException {
+
+  private final ExportJob runningJob;
+
+  JobConflictException(String type, ExportJob runningJob) {
+    super(type + " overlaps " + runningJob.getType() + " job " + runningJob.getId());
+    this.runningJob = runningJob;
+  }
+
+  JobConflictException(String message) {
+    super(message);
+    this.runningJob = null;
+  }
+}
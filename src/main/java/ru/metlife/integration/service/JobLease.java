@@ -0,0 +1,19 @@
+package ru.metlife.integration.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A lease held by this node. The token grows with every acquisition of the lease, so writes
+ * checked against it are rejected once another node has taken the lease over.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class JobLease {
+
+  private final String name;
+  private final String owner;
+  private final long token;
+}
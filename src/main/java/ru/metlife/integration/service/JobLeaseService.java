@@ -0,0 +1,176 @@
+package ru.metlife.integration.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Cluster-wide job leases in the {@code job_lease} table. A lease is held until released or
+ * until {@code lease-duration-ms} pass without a heartbeat, then any node may take it over.
+ * Expiry is judged by the database clock, node clocks don't have to agree.
+ *
+ * <p>Writes of a leased job call {@link #checkHeld(JobLease)} in their own transaction: the
+ * update locks the lease row until commit, so a takeover either happens before and the write
+ * fails, or waits until the write is committed. Writes running in parallel under one lease call
+ * {@link #checkHeldShared(JobLease)} instead, which holds a shared lock on the row until commit:
+ * the writes don't wait for each other, a takeover waits for all of them.
+ */
+@Service
+@Slf4j
+public class JobLeaseService {
+
+  private static final String TAKE_OVER_SQL = ""
+      + "update job_lease set owner = ?, token = token + 1,"
+      + " expires_at = dateadd(millisecond, ?, current_timestamp), updated_at = current_timestamp"
+      + " where lease_name = ? and (owner is null or expires_at < current_timestamp)";
+
+  private static final String INSERT_SQL = ""
+      + "insert into job_lease (lease_name, owner, token, expires_at, updated_at)"
+      + " values (?, ?, 1, dateadd(millisecond, ?, current_timestamp), current_timestamp)";
+
+  private static final String TOKEN_SQL =
+      "select token from job_lease where lease_name = ? and owner = ?";
+
+  private static final String RENEW_SQL = ""
+      + "update job_lease set expires_at = dateadd(millisecond, ?, current_timestamp),"
+      + " updated_at = current_timestamp"
+      + " where lease_name = ? and owner = ? and token = ?";
+
+  private static final String HELD_SHARED_SQL = ""
+      + "select count(*) from job_lease with (holdlock, rowlock)"
+      + " where lease_name = ? and owner = ? and token = ? and expires_at > current_timestamp";
+
+  private static final String HELD_SQL = ""
+      + "select count(*) from job_lease"
+      + " where lease_name = ? and owner = ? and token = ? and expires_at > current_timestamp";
+
+  private static final String SQL_SERVER = "Microsoft SQL Server";
+
+  private static final String RELEASE_SQL = ""
+      + "update job_lease set owner = null, expires_at = current_timestamp,"
+      + " updated_at = current_timestamp"
+      + " where lease_name = ? and owner = ? and token = ?";
+
+  // int, SQL Server's dateadd rejects a bigint number
+  @Value("${fi-cong-integration.lease-duration-ms:60000}")
+  private int leaseDurationMs;
+  @Value("${fi-cong-integration.node-id:}")
+  private String nodeId;
+
+  private JdbcTemplate jdbcTemplate;
+  private final Set<JobLease> heldLeases = ConcurrentHashMap.newKeySet();
+  private volatile String heldSharedSql;
+
+  @Autowired
+  public JobLeaseService(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Name of this node in {@code job_lease.owner}: {@code node-id} or pid@host.
+   */
+  public String getNodeId() {
+    return StringUtils.isBlank(nodeId) ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+  }
+
+  /**
+   * Returns the lease, {@code null} if another node holds it.
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  public JobLease tryAcquire(String name) {
+    String owner = getNodeId();
+    if (jdbcTemplate.update(TAKE_OVER_SQL, owner, leaseDurationMs, name) == 0) {
+      try {
+        jdbcTemplate.update(INSERT_SQL, name, owner, leaseDurationMs);
+      } catch (DuplicateKeyException e) {
+        log.debug("lease {} is held by another node", name);
+        return null;
+      }
+    }
+    JobLease lease = new JobLease(name, owner,
+        jdbcTemplate.queryForObject(TOKEN_SQL, Long.class, name, owner));
+    heldLeases.add(lease);
+    log.info("lease {} acquired with token {}", name, lease.getToken());
+    return lease;
+  }
+
+  /**
+   * Fencing check, extends the lease as a side effect. Must run inside the transaction of the
+   * write it protects.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void checkHeld(JobLease lease) {
+    if (!renew(lease)) {
+      throw new IllegalStateException("lease " + lease.getName() + " with token "
+          + lease.getToken() + " is no longer held by " + lease.getOwner());
+    }
+  }
+
+  /**
+   * Fencing check for parallel writes, which would queue up on the lease row behind each other
+   * with {@link #checkHeld}. Reads the row {@code with (holdlock, rowlock)}, a shared lock held
+   * until commit, so the writes run side by side while a takeover or renewal waits for them.
+   * Renewal is left to the heartbeat. Must run inside the transaction of the write it protects.
+   *
+   * <p>Other databases, i.e. H2 of the load tests, have no such hint and read the row without
+   * a lock: there a lease that expires during the write can be taken over before it commits.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void checkHeldShared(JobLease lease) {
+    if (jdbcTemplate.queryForObject(heldSharedSql(), Integer.class, lease.getName(),
+        lease.getOwner(), lease.getToken()) == 0) {
+      throw new IllegalStateException("lease " + lease.getName() + " with token "
+          + lease.getToken() + " is no longer held by " + lease.getOwner());
+    }
+  }
+
+  public void release(JobLease lease) {
+    heldLeases.remove(lease);
+    try {
+      jdbcTemplate.update(RELEASE_SQL, lease.getName(), lease.getOwner(), lease.getToken());
+    } catch (DataAccessException e) {
+      log.warn("lease {} not released, it expires by itself: {}", lease.getName(),
+          e.getMessage());
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${fi-cong-integration.lease-heartbeat-ms:15000}")
+  public void heartbeat() {
+    for (JobLease lease : heldLeases) {
+      try {
+        if (!renew(lease)) {
+          heldLeases.remove(lease);
+          log.warn("lease {} with token {} was taken over", lease.getName(), lease.getToken());
+        }
+      } catch (DataAccessException e) {
+        log.warn("lease {} not renewed: {}", lease.getName(), e.getMessage());
+      }
+    }
+  }
+
+  private String heldSharedSql() {
+    if (heldSharedSql == null) {
+      String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+          connection.getMetaData().getDatabaseProductName());
+      heldSharedSql = SQL_SERVER.equals(product) ? HELD_SHARED_SQL : HELD_SQL;
+    }
+    return heldSharedSql;
+  }
+
+  private boolean renew(JobLease lease) {
+    return jdbcTemplate.update(RENEW_SQL, leaseDurationMs, lease.getName(), lease.getOwner(),
+        lease.getToken()) > 0;
+  }
+}
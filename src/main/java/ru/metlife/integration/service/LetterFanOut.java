@@ -0,0 +1,33 @@
+package ru.metlife.integration.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import ru.metlife.integration.dto.LetterDto;
+import ru.metlife.integration.dto.OrderDto;
+import ru.metlife.integration.dto.RecipientDto;
+
+/**
+ * Turns orders into the letters of their recipients; needs nothing but the dictionary lookup.
+ */
+class LetterFanOut {
+
+  private final DictionaryService dictionaryService;
+
+  LetterFanOut(DictionaryService dictionaryService) {
+    this.dictionaryService = dictionaryService;
+  }
+
+  /**
+   * One letter per recipient; the order itself is shared by all of them, not copied.
+   */
+  List<LetterDto> fanOut(OrderDto o, DictionaryIndex dictionaryIndex) {
+    List<RecipientDto> recipients = dictionaryService
+        .getRecipientsFromDictionary(dictionaryIndex,
+            o.getRegion(), o.getPartner(), o.getDealership());
+    List<LetterDto> letters = new ArrayList<>(recipients.size());
+    for (RecipientDto recipient : recipients) {
+      letters.add(new LetterDto(o, recipient));
+    }
+    return letters;
+  }
+}
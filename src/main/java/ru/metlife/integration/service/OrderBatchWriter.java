@@ -0,0 +1,154 @@
+package ru.metlife.integration.service;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.fill;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.metlife.integration.dto.LetterDto;
+
+/**
+ * Bulk persistence of exported orders. Every letter produces one row in {@code orders},
+ * {@code data_fi_time_freeze} and {@code delivery_data}; rows are written table by table with
+ * multi-row inserts of up to {@code persist-batch-size} rows per statement.
+ */
+@Service
+@Slf4j
+public class OrderBatchWriter {
+
+  /**
+   * SQL Server accepts at most 2100 parameters per statement.
+   */
+  private static final int MAX_STATEMENT_PARAMETERS = 2000;
+
+  private static final TableInsert<LetterDto> ORDERS = new TableInsert<>("orders",
+      new String[]{"order_id", "recipient", "channel", "sender", "status", "subject",
+          "created_at", "created_by"},
+      new int[]{Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER,
+          Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR},
+      l -> new Object[]{l.getOrderId(), l.getEmail(), l.getOrder().getChannel(),
+          l.getOrder().getSender(), l.getOrder().getStatus(), l.getOrder().getSubject(),
+          l.getOrder().getCreatedAt(), l.getOrder().getCreatedBy()});
+
+  private static final TableInsert<LetterDto> DATA_FI_TIME_FREEZE = new TableInsert<>(
+      "data_fi_time_freeze",
+      new String[]{"id", "polnum", "doc_type", "client_fio", "comment", "e_mail", "e_mail_copy",
+          "entry_hash", "created_at", "order_id"},
+      new int[]{Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+          Types.VARCHAR, Types.VARCHAR, Types.VARBINARY, Types.TIMESTAMP, Types.VARCHAR},
+      l -> new Object[]{l.getLetterId(), l.getOrder().getPolNum(), l.getOrder().getDocType(),
+          l.getOrder().getClientFio(), l.getOrder().getComment(), l.getEmail(), l.getEmailCC(),
+          l.getOrder().getEntryHash(), l.getOrder().getCreatedAt(), l.getOrderId()});
+
+  private static final TableInsert<LetterDto> DELIVERY_DATA = new TableInsert<>("delivery_data",
+      new String[]{"id", "order_id", "delivery_status", "created_at", "pp_num"},
+      new int[]{Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR},
+      l -> new Object[]{l.getDeliveryDataId(), l.getOrderId(),
+          l.getOrder().getDeliveryStatus(), l.getOrder().getCreatedAt(), l.getOrder().getPpNum()});
+
+  @Value("${fi-cong-integration.persist-batch-size:100}")
+  private int batchSize;
+
+  private JdbcTemplate jdbcTemplate;
+  private ExportMetrics exportMetrics;
+  private IdGenerator idGenerator;
+
+  @Autowired
+  public OrderBatchWriter(JdbcTemplate jdbcTemplate, ExportMetrics exportMetrics,
+      IdGenerator idGenerator) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.exportMetrics = exportMetrics;
+    this.idGenerator = idGenerator;
+  }
+
+  /**
+   * Assigns order, letter and delivery data ids to the given letters and inserts them. Ids are
+   * generated here, one block per table so every table gets its ids in ascending order, and
+   * written back to the DTOs, there is no entity round trip.
+   */
+  @Transactional
+  public void write(List<LetterDto> letters) {
+    if (letters.isEmpty()) {
+      return;
+    }
+    List<String> orderIds = idGenerator.nextIds(letters.size());
+    List<String> letterIds = idGenerator.nextIds(letters.size());
+    List<String> deliveryDataIds = idGenerator.nextIds(letters.size());
+    for (int i = 0; i < letters.size(); i++) {
+      LetterDto letter = letters.get(i);
+      letter.setOrderId(orderIds.get(i));
+      letter.setLetterId(letterIds.get(i));
+      letter.setDeliveryDataId(deliveryDataIds.get(i));
+    }
+    int statements = insert(ORDERS, letters)
+        + insert(DATA_FI_TIME_FREEZE, letters)
+        + insert(DELIVERY_DATA, letters);
+    log.debug("{} letters written with {} statements", letters.size(), statements);
+  }
+
+  <T> int insert(TableInsert<T> tableInsert, List<T> rows) {
+    return exportMetrics.time("export.insert." + tableInsert.table,
+        () -> insertBatches(tableInsert, rows));
+  }
+
+  private <T> int insertBatches(TableInsert<T> tableInsert, List<T> rows) {
+    int rowsPerStatement = max(1,
+        min(batchSize, MAX_STATEMENT_PARAMETERS / tableInsert.columns.length));
+    int statements = 0;
+    for (int from = 0; from < rows.size(); from += rowsPerStatement) {
+      List<T> chunk = rows.subList(from, min(rows.size(), from + rowsPerStatement));
+      List<Object> args = new ArrayList<>(chunk.size() * tableInsert.columns.length);
+      int[] argTypes = new int[chunk.size() * tableInsert.columns.length];
+      for (int i = 0; i < chunk.size(); i++) {
+        for (Object value : tableInsert.rowMapper.apply(chunk.get(i))) {
+          args.add(value);
+        }
+        System.arraycopy(tableInsert.types, 0, argTypes, i * tableInsert.types.length,
+            tableInsert.types.length);
+      }
+      jdbcTemplate.update(tableInsert.sql(chunk.size()), args.toArray(), argTypes);
+      statements++;
+    }
+    return statements;
+  }
+
+  static class TableInsert<T> {
+
+    private final String table;
+    private final String[] columns;
+    private final int[] types;
+    private final Function<T, Object[]> rowMapper;
+
+    TableInsert(String table, String[] columns, int[] types, Function<T, Object[]> rowMapper) {
+      this.table = table;
+      this.columns = columns;
+      this.types = types;
+      this.rowMapper = rowMapper;
+    }
+
+    String sql(int rowCount) {
+      String[] placeholders = new String[columns.length];
+      fill(placeholders, "?");
+      String row = "(" + String.join(", ", placeholders) + ")";
+      StringBuilder sql = new StringBuilder("insert into ")
+          .append(table)
+          .append(" (")
+          .append(String.join(", ", columns))
+          .append(") values ")
+          .append(row);
+      for (int i = 1; i < rowCount; i++) {
+        sql.append(", ").append(row);
+      }
+      return sql.toString();
+    }
+  }
+}
@@ -1,37 +1,34 @@
 package ru.metlife.integration.service;
 
 import static java.lang.String.join;
-import static java.util.Collections.emptyList;
-import static java.util.Optional.ofNullable;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
 import static java.util.stream.Stream.of;
 import static org.springframework.util.DigestUtils.md5Digest;
 import static ru.metlife.integration.util.CommonUtils.getStringCellValue;
 
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.Date;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import ru.metlife.integration.config.ExportSource;
 import ru.metlife.integration.dto.OrderDto;
 import ru.metlife.integration.entity.OrderEntity;
 import ru.metlife.integration.repository.OrderRepository;
 import ru.metlife.integration.service.mapper.BeanMapper;
-import ru.metlife.integration.service.xssf.XlsService.SheetData;
+import ru.metlife.integration.service.xssf.SheetRow;
+import ru.metlife.integration.service.xssf.SheetSchema;
+import ru.metlife.integration.util.MurmurHash3;
 
 @Service
 public class OrderService extends AbstractCrudService<OrderDto, OrderEntity> {
 
   private static final int FI_LETTER_STATUS = 17;
+  private static final char FIELD_SEPARATOR = '\u001f';
 
   @Value("${fi-cong-integration.sender-email}")
   private String sender;
@@ -40,12 +37,15 @@ public class OrderService extends AbstractCrudService<OrderDto, OrderEntity> {
 
   private OrderRepository orderRepository;
   private BeanMapper<OrderDto, OrderEntity> beanMapper;
+  private IdGenerator idGenerator;
 
   @Autowired
   public OrderService(OrderRepository orderRepository,
-      @Qualifier("orderMapper") BeanMapper<OrderDto, OrderEntity> beanMapper) {
+      @Qualifier("orderMapper") BeanMapper<OrderDto, OrderEntity> beanMapper,
+      IdGenerator idGenerator) {
     this.orderRepository = orderRepository;
     this.beanMapper = beanMapper;
+    this.idGenerator = idGenerator;
   }
 
   public void saveOrder(OrderDto dto) {
@@ -53,14 +53,9 @@ public class OrderService extends AbstractCrudService<OrderDto, OrderEntity> {
     dto.setOrderId(orderDto.getOrderId());
   }
 
-  @Transactional(readOnly = true)
-  public OrderDto findByOrderId(String orderId) {
-    return mapToDto(orderRepository.findByOrderId(orderId));
-  }
-
   @Override
   protected OrderEntity entityPreSaveAction(OrderEntity entity) {
-    entity.setOrderId(UUID.randomUUID().toString());
+    entity.setOrderId(idGenerator.nextId());
     return super.entityPreSaveAction(entity);
   }
 
@@ -74,41 +69,34 @@ public class OrderService extends AbstractCrudService<OrderDto, OrderEntity> {
     return orderRepository;
   }
 
-  public List<OrderDto> toOrderDto(SheetData sheetData) {
-    return ofNullable(sheetData.getData())
-        .orElse(emptyList())
-        .stream()
-        .map(this::toOrderDto)
-        .collect(toList());
-  }
-
-  public OrderDto toOrderDto(Map<String, String> orderFromXls) {
-    String orderId = getStringCellValue(orderFromXls, "order_id", null);
-    String deliveryStatus = getStringCellValue(orderFromXls, "delivery_status");
-    String ppNum = getStringCellValue(orderFromXls, "№ п/п");
-    String polNum = getStringCellValue(orderFromXls, "Номер сертификата");
-    String clientFio = getStringCellValue(orderFromXls, "ФИО");
-    String comments = getStringCellValue(orderFromXls, "Комментарии");
-    String docType = getStringCellValue(orderFromXls, "Тип документа");
-    String email = getStringCellValue(orderFromXls, "e-mail");
-    String emailCC = getStringCellValue(orderFromXls, "e-mail копия");
-    String dealership = getStringCellValue(orderFromXls, "Дилерский центр");
-    String partner = getStringCellValue(orderFromXls, "Партнер");
-    String region = getStringCellValue(orderFromXls, "Region");
-    String rowNum = getStringCellValue(orderFromXls, "rowNum");
+  /**
+   * Maps a row of the given source; pp_num is qualified with the source prefix and the entry
+   * hash is the {@link #fingerprint} of the row.
+   */
+  public OrderDto toOrderDto(ExportSource source, SheetRow orderFromXls) {
+    Columns columns = orderFromXls.getSchema().compiled(Columns.class, Columns::new);
+    String orderId = getStringCellValue(orderFromXls, columns.orderId, null);
+    String deliveryStatus = getStringCellValue(orderFromXls, columns.deliveryStatus);
+    String ppNum = source.qualifyPpNum(getStringCellValue(orderFromXls, columns.ppNum));
+    String polNum = getStringCellValue(orderFromXls, columns.polNum);
+    String clientFio = getStringCellValue(orderFromXls, columns.clientFio);
+    String comments = getStringCellValue(orderFromXls, columns.comments);
+    String docType = getStringCellValue(orderFromXls, columns.docType);
+    String email = getStringCellValue(orderFromXls, columns.email);
+    String emailCC = getStringCellValue(orderFromXls, columns.emailCC);
+    String dealership = getStringCellValue(orderFromXls, columns.dealership);
+    String partner = getStringCellValue(orderFromXls, columns.partner);
+    String region = getStringCellValue(orderFromXls, columns.region);
 
     OrderDto orderDto = new OrderDto();
-    orderDto.setRowNum(Integer.valueOf(rowNum));
+    orderDto.setRowNum(orderFromXls.getRowNum());
     orderDto.setPpNum(ppNum);
     orderDto.setOrderId(orderId);
     orderDto.setDeliveryStatus(deliveryStatus);
     orderDto.setRecipient(email);
     orderDto.setChannel(channel);
     orderDto.setSender(sender);
-    String subject = of(dealership, region, polNum, clientFio, docType)
-        .filter(StringUtils::isNotBlank)
-        .collect(joining("_"));
-    orderDto.setSubject(subject);
+    orderDto.setSubject(subject(dealership, region, polNum, clientFio, docType));
     orderDto.setStatus(FI_LETTER_STATUS);
     orderDto.setCreatedAt(new Date());
     orderDto.setCreatedBy(sender);
@@ -117,15 +105,90 @@ public class OrderService extends AbstractCrudService<OrderDto, OrderEntity> {
     orderDto.setComment(comments);
     orderDto.setDocType(docType);
     orderDto.setEmailCC(emailCC);
-    try {
-      byte[] entryHash = md5Digest(join("_", subject, email).getBytes("UTF-8"));
-      orderDto.setEntryHash(entryHash);
-    } catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
-    }
+    orderDto.setEntryHash(fingerprint(orderFromXls, columns, ppNum).toBytes());
     orderDto.setDealership(dealership);
     orderDto.setPartner(partner);
     orderDto.setRegion(region);
     return orderDto;
   }
+
+  public String getPpNum(ExportSource source, SheetRow orderFromXls) {
+    Columns columns = orderFromXls.getSchema().compiled(Columns.class, Columns::new);
+    return source.qualifyPpNum(getStringCellValue(orderFromXls, columns.ppNum));
+  }
+
+  /**
+   * Hash of every content column of the row: pp_num as qualified by the source, but neither
+   * order_id nor delivery_status, which are filled in by the integration itself. A row keeps its
+   * fingerprint until someone edits it.
+   */
+  public RowFingerprint fingerprint(ExportSource source, SheetRow orderFromXls) {
+    Columns columns = orderFromXls.getSchema().compiled(Columns.class, Columns::new);
+    return fingerprint(orderFromXls, columns, getPpNum(source, orderFromXls));
+  }
+
+  /**
+   * MD5 of subject and e-mail, the entry hash written before fingerprints were introduced.
+   */
+  public RowFingerprint legacyFingerprint(SheetRow orderFromXls) {
+    Columns columns = orderFromXls.getSchema().compiled(Columns.class, Columns::new);
+    String subject = subject(getStringCellValue(orderFromXls, columns.dealership),
+        getStringCellValue(orderFromXls, columns.region),
+        getStringCellValue(orderFromXls, columns.polNum),
+        getStringCellValue(orderFromXls, columns.clientFio),
+        getStringCellValue(orderFromXls, columns.docType));
+    String email = getStringCellValue(orderFromXls, columns.email);
+    return RowFingerprint.of(md5Digest(join("_", subject, email).getBytes(UTF_8)));
+  }
+
+  private RowFingerprint fingerprint(SheetRow orderFromXls, Columns columns, String ppNum) {
+    StringBuilder content = new StringBuilder(256).append(ppNum);
+    for (int column : columns.content) {
+      content.append(FIELD_SEPARATOR).append(getStringCellValue(orderFromXls, column));
+    }
+    byte[] bytes = content.toString().getBytes(UTF_8);
+    long[] hash = MurmurHash3.hash128(bytes, 0, bytes.length, 0);
+    return new RowFingerprint(hash[0], hash[1]);
+  }
+
+  private String subject(String dealership, String region, String polNum, String clientFio,
+      String docType) {
+    return of(dealership, region, polNum, clientFio, docType)
+        .filter(StringUtils::isNotBlank)
+        .collect(joining("_"));
+  }
+
+  static final class Columns {
+
+    final int orderId;
+    final int deliveryStatus;
+    final int ppNum;
+    final int polNum;
+    final int clientFio;
+    final int comments;
+    final int docType;
+    final int email;
+    final int emailCC;
+    final int dealership;
+    final int partner;
+    final int region;
+    final int[] content;
+
+    Columns(SheetSchema schema) {
+      orderId = schema.columnOf("order_id");
+      deliveryStatus = schema.columnOf("delivery_status");
+      ppNum = schema.columnOf("№ п/п");
+      polNum = schema.columnOf("Номер сертификата");
+      clientFio = schema.columnOf("ФИО");
+      comments = schema.columnOf("Комментарии");
+      docType = schema.columnOf("Тип документа");
+      email = schema.columnOf("e-mail");
+      emailCC = schema.columnOf("e-mail копия");
+      dealership = schema.columnOf("Дилерский центр");
+      partner = schema.columnOf("Партнер");
+      region = schema.columnOf("Region");
+      content = new int[]{polNum, clientFio, comments, docType, email, emailCC, dealership,
+          partner, region};
+    }
+  }
 }
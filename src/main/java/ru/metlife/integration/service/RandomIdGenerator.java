@@ -0,0 +1,30 @@
+package ru.metlife.integration.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Random UUIDs, the ids used before {@link SequentialIdGenerator}. Enabled with
+ * {@code id-generator: random}.
+ */
+@Component
+@ConditionalOnProperty(name = "fi-cong-integration.id-generator", havingValue = "random")
+public class RandomIdGenerator implements IdGenerator {
+
+  @Override
+  public String nextId() {
+    return UUID.randomUUID().toString();
+  }
+
+  @Override
+  public List<String> nextIds(int count) {
+    List<String> ids = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      ids.add(nextId());
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,45 @@
+package ru.metlife.integration.service;
+
+import static java.util.Objects.isNull;
+
+import java.nio.ByteBuffer;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 128-bit content fingerprint of an order sheet row, stored in
+ * {@code data_fi_time_freeze.entry_hash}. Legacy MD5 entry hashes have the same width and are
+ * represented by this class as well.
+ */
+@EqualsAndHashCode
+public final class RowFingerprint {
+
+  public static final int BYTES = 16;
+
+  private final long high;
+  private final long low;
+
+  public RowFingerprint(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  /**
+   * Returns {@code null} for values that are not 16 bytes wide.
+   */
+  public static RowFingerprint of(byte[] bytes) {
+    if (isNull(bytes) || bytes.length != BYTES) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    return new RowFingerprint(buffer.getLong(), buffer.getLong());
+  }
+
+  public byte[] toBytes() {
+    return ByteBuffer.allocate(BYTES).putLong(high).putLong(low).array();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%016x%016x", high, low);
+  }
+}
@@ -0,0 +1,100 @@
+package ru.metlife.integration.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Time-ordered ids in the UUID version 7 layout: 48 bits of milliseconds, a 14 bit sequence
+ * within the millisecond and 60 random bits, written as lower case hex. New ids sort after
+ * older ones as strings, so inserts append to the end of the clustered index instead of
+ * splitting pages all over it. The random tail keeps ids of different nodes apart and is what
+ * the status sync partitions hash on.
+ *
+ * <p>Blocks of sequence numbers are reserved with a single compare-and-set on the packed
+ * millisecond and sequence; when a millisecond runs out of sequence numbers, or the clock
+ * goes back, ids continue in the following millisecond so they never go backwards.
+ */
+@Component
+@ConditionalOnProperty(name = "fi-cong-integration.id-generator", havingValue = "sequential",
+    matchIfMissing = true)
+public class SequentialIdGenerator implements IdGenerator {
+
+  private static final int SEQUENCE_BITS = 14;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * Millisecond of the last reserved block shifted left by {@link #SEQUENCE_BITS}, plus the
+   * next free sequence number.
+   */
+  private final AtomicLong state = new AtomicLong();
+
+  @Override
+  public String nextId() {
+    long reserved = reserve(1);
+    return format(reserved >>> SEQUENCE_BITS, reserved & SEQUENCE_MASK);
+  }
+
+  @Override
+  public List<String> nextIds(int count) {
+    List<String> ids = new ArrayList<>(count);
+    while (ids.size() < count) {
+      long reserved = reserve(count - ids.size());
+      long millis = reserved >>> SEQUENCE_BITS;
+      long first = reserved & SEQUENCE_MASK;
+      long last = Math.min(SEQUENCE_MASK, first + count - ids.size() - 1);
+      for (long sequence = first; sequence <= last; sequence++) {
+        ids.add(format(millis, sequence));
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Reserves up to {@code count} consecutive sequence numbers of one millisecond and returns
+   * the first of them packed with the millisecond.
+   */
+  private long reserve(int count) {
+    while (true) {
+      long current = state.get();
+      long millis = Math.max(System.currentTimeMillis(), current >>> SEQUENCE_BITS);
+      long sequence = millis == current >>> SEQUENCE_BITS ? current & SEQUENCE_MASK : 0;
+      // a used up sequence carries into the millisecond bits
+      long next = (millis << SEQUENCE_BITS) + Math.min(sequence + count, SEQUENCE_MASK + 1);
+      if (state.compareAndSet(current, next)) {
+        return millis << SEQUENCE_BITS | sequence;
+      }
+    }
+  }
+
+  private static String format(long millis, long sequence) {
+    long random = ThreadLocalRandom.current().nextLong();
+    char[] id = new char[36];
+    hex(id, 0, millis >>> 16, 8);
+    id[8] = '-';
+    hex(id, 9, millis, 4);
+    id[13] = '-';
+    id[14] = '7';
+    hex(id, 15, sequence >>> 2, 3);
+    id[18] = '-';
+    id[19] = HEX[0x8 | (int) (sequence & 0x3)];
+    hex(id, 20, random >>> 48, 3);
+    id[23] = '-';
+    hex(id, 24, random, 12);
+    return new String(id);
+  }
+
+  /**
+   * Writes the lowest {@code digits} hex digits of {@code value} at {@code offset}.
+   */
+  private static void hex(char[] id, int offset, long value, int digits) {
+    for (int i = digits - 1; i >= 0; i--) {
+      id[offset + i] = HEX[(int) (value & 0xF)];
+      value >>>= 4;
+    }
+  }
+}
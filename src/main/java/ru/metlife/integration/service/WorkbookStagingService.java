@@ -0,0 +1,233 @@
+package ru.metlife.integration.service;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.stream.Collectors.toList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.metlife.integration.config.ExportSource;
+
+/**
+ * Copies a source workbook from the network share to the local staging directory, so that the
+ * SAX parser's random access to the zip never goes over SMB. The copy is written to a temporary
+ * file and atomically renamed to {@code <source>-<sha256>.xlsx}; a half-copied workbook is never
+ * visible and a staged copy is never replaced while it is open, so its name always matches the
+ * checksum of the content read from it. The copy keeps the size and modification time of the
+ * original and is reused while they match.
+ *
+ * <p>A {@link StagedWorkbook} is in use until it is closed. Older copies of a source are
+ * deleted once no run uses them any more; one that can't be deleted yet is retried on the next
+ * staging of the source.
+ */
+@Service
+@Slf4j
+public class WorkbookStagingService {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final String CHECKSUM_PATTERN = "-([0-9A-F]{64})\\.xlsx";
+
+  // guarded by this
+  private final Map<Path, Integer> usages = new HashMap<>();
+
+  @Value("${fi-cong-integration.staging-dir:${java.io.tmpdir}/fi-cong-staging}")
+  private String stagingDir;
+  @Value("${fi-cong-integration.staging-attempts:3}")
+  private int stagingAttempts;
+  @Value("${fi-cong-integration.staging-retry-delay-ms:10000}")
+  private long stagingRetryDelayMs;
+
+  /**
+   * Stages the workbook of the given source, retrying while the share is unavailable or the
+   * workbook changes during the copy.
+   */
+  public StagedWorkbook stage(ExportSource source) {
+    IOException lastFailure = null;
+    for (int attempt = 1; attempt <= stagingAttempts; attempt++) {
+      try {
+        return stageOnce(source);
+      } catch (IOException e) {
+        lastFailure = e;
+        log.warn("{}: staging attempt {} of {} failed: {}", source.getName(), attempt,
+            stagingAttempts, e.getMessage());
+        if (attempt < stagingAttempts) {
+          sleep(stagingRetryDelayMs);
+        }
+      }
+    }
+    throw new IllegalStateException(
+        "can't stage " + source.getDocFilePath() + ": " + lastFailure.getMessage(), lastFailure);
+  }
+
+  StagedWorkbook stageOnce(ExportSource source) throws IOException {
+    Path sourcePath = toPath(source.getDocFilePath());
+    BasicFileAttributes before = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+    Path stagingPath = Files.createDirectories(toPath(stagingDir));
+    Pattern stagedName = Pattern.compile(Pattern.quote(source.getName()) + CHECKSUM_PATTERN);
+
+    synchronized (this) {
+      for (Path localPath : stagedCopies(stagingPath, stagedName)) {
+        if (isUpToDate(localPath, before)) {
+          log.debug("{}: staged copy {} is up to date", source.getName(), localPath);
+          return use(source, stagingPath, stagedName, localPath, before);
+        }
+      }
+    }
+
+    Path tempPath = Files.createTempFile(stagingPath, source.getName() + "-", ".tmp");
+    try {
+      String checksum = copy(sourcePath, tempPath);
+      BasicFileAttributes after = Files.readAttributes(sourcePath, BasicFileAttributes.class);
+      if (before.size() != after.size()
+          || !before.lastModifiedTime().equals(after.lastModifiedTime())) {
+        throw new IOException("workbook changed while it was being copied");
+      }
+      Files.setLastModifiedTime(tempPath, before.lastModifiedTime());
+      Path localPath = stagingPath.resolve(source.getName() + "-" + checksum + ".xlsx");
+      synchronized (this) {
+        if (Files.isRegularFile(localPath)) {
+          // same content under another modification time, possibly open
+          Files.setLastModifiedTime(localPath, before.lastModifiedTime());
+        } else {
+          Files.move(tempPath, localPath, ATOMIC_MOVE);
+        }
+        log.info("{}: {} bytes staged to {}", source.getName(), before.size(), localPath);
+        return use(source, stagingPath, stagedName, localPath, before);
+      }
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+  }
+
+  /**
+   * Marks the copy as in use and deletes the unused older copies of the source.
+   */
+  private synchronized StagedWorkbook use(ExportSource source, Path stagingPath,
+      Pattern stagedName, Path localPath, BasicFileAttributes attributes) throws IOException {
+    usages.merge(localPath, 1, Integer::sum);
+    for (Path stagedCopy : stagedCopies(stagingPath, stagedName)) {
+      if (!stagedCopy.equals(localPath) && !usages.containsKey(stagedCopy)) {
+        deleteQuietly(source, stagedCopy);
+      }
+    }
+    Matcher matcher = stagedName.matcher(localPath.getFileName().toString());
+    matcher.matches();
+    return new StagedWorkbook(localPath.toString(), attributes.size(),
+        attributes.lastModifiedTime().toMillis(), matcher.group(1),
+        () -> release(localPath));
+  }
+
+  private synchronized void release(Path localPath) {
+    usages.computeIfPresent(localPath, (path, count) -> count == 1 ? null : count - 1);
+  }
+
+  private List<Path> stagedCopies(Path stagingPath, Pattern stagedName) throws IOException {
+    try (Stream<Path> files = Files.list(stagingPath)) {
+      return files
+          .filter(path -> stagedName.matcher(path.getFileName().toString()).matches())
+          .collect(toList());
+    }
+  }
+
+  private void deleteQuietly(ExportSource source, Path path) {
+    try {
+      Files.deleteIfExists(path);
+      log.info("{}: older staged copy {} deleted", source.getName(), path);
+    } catch (IOException e) {
+      log.warn("{}: older staged copy {} not deleted: {}", source.getName(), path,
+          e.getMessage());
+    }
+  }
+
+  private boolean isUpToDate(Path localPath, BasicFileAttributes source) throws IOException {
+    if (!Files.isRegularFile(localPath)) {
+      return false;
+    }
+    BasicFileAttributes local = Files.readAttributes(localPath, BasicFileAttributes.class);
+    return local.size() == source.size()
+        && local.lastModifiedTime().toMillis() == source.lastModifiedTime().toMillis();
+  }
+
+  private String copy(Path from, Path to) throws IOException {
+    MessageDigest digest = newDigest();
+    try (InputStream in = new DigestInputStream(Files.newInputStream(from), digest);
+        OutputStream out = Files.newOutputStream(to)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return new String(Hex.encodeHex(digest.digest(), false));
+  }
+
+  private MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Path toPath(String path) throws IOException {
+    try {
+      return Paths.get(path);
+    } catch (InvalidPathException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("workbook staging interrupted", e);
+    }
+  }
+
+  /**
+   * Local copy of a source workbook together with the attributes of the original. The copy
+   * stays in place at least until it is closed.
+   */
+  @Getter
+  @AllArgsConstructor(access = AccessLevel.PRIVATE)
+  @ToString(exclude = "release")
+  public static class StagedWorkbook implements Closeable {
+
+    private final String localPath;
+    private final long sourceSize;
+    private final long sourceLastModified;
+    private final String checksum;
+    @Getter(AccessLevel.NONE)
+    private final Runnable release;
+
+    @Override
+    public void close() {
+      release.run();
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package ru.metlife.integration.service;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import ru.metlife.integration.config.ExportSource;
+import ru.metlife.integration.config.ExportSourcesProperties;
+import ru.metlife.integration.service.WorkbookStagingService.StagedWorkbook;
+import ru.metlife.integration.service.xssf.ExcelRowContentCollback;
+import ru.metlife.integration.service.xssf.SheetCellRewriter;
+import ru.metlife.integration.service.xssf.SheetRow;
+import ru.metlife.integration.service.xssf.WorkbookSession;
+import ru.metlife.integration.service.xssf.XlsService;
+
+/**
+ * Writes {@code order_id} and {@code delivery_status} of the exported orders back into a copy
+ * of the order sheet, {@code <write-back-dir>/<source>.xlsx}. A row fanned out to several
+ * letters gets their order ids and distinct statuses separated by commas.
+ *
+ * <p>The copy is made by streaming the sheet part through a {@link SheetCellRewriter}, every
+ * other part of the workbook is copied unchanged. While the source workbook stays the same,
+ * the previous copy is the base of the next one, so only rows whose values changed since the
+ * last write-back are touched; when none changed, no file is written. A changed source workbook
+ * is always copied in full, even when none of its rows need new values. Memory holds the values
+ * of every exported row of the source and one map entry per changed row, which refers to
+ * those values; the cells themselves are built while the row is rewritten.
+ *
+ * <p>Rows of delivery_data belong to the source whose pp_num prefix is the longest one they
+ * start with, so the rows of a source whose prefix extends this one's are left out.
+ */
+@Service
+@Slf4j
+public class WorkbookWriteBackService {
+
+  private static final String WRITE_BACK_JOB = "writeBack";
+  private static final String ORDER_ID = "order_id";
+  private static final String DELIVERY_STATUS = "delivery_status";
+  private static final String SEPARATOR = ", ";
+
+  private static final String SELECT_DELIVERY_DATA_SQL = ""
+      + "select pp_num, order_id, delivery_status from delivery_data"
+      + " where pp_num like ? escape '\\'";
+  private static final String EXCLUDE_PREFIX_SQL = " and pp_num not like ? escape '\\'";
+  private static final String ORDER_BY_SQL = " order by pp_num, order_id";
+
+  @Value("${fi-cong-integration.write-back-dir:${java.io.tmpdir}/fi-cong-write-back}")
+  private String writeBackDir;
+
+  private JdbcTemplate jdbcTemplate;
+  private OrderService orderService;
+  private WorkbookStagingService workbookStagingService;
+  private JobCheckpointService jobCheckpointService;
+  private ExportSourcesProperties exportSourcesProperties;
+
+  @Autowired
+  public WorkbookWriteBackService(JdbcTemplate jdbcTemplate, OrderService orderService,
+      WorkbookStagingService workbookStagingService,
+      JobCheckpointService jobCheckpointService,
+      ExportSourcesProperties exportSourcesProperties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.orderService = orderService;
+    this.workbookStagingService = workbookStagingService;
+    this.jobCheckpointService = jobCheckpointService;
+    this.exportSourcesProperties = exportSourcesProperties;
+  }
+
+  /**
+   * Returns the number of rows changed in the copy.
+   */
+  public int writeBack(ExportSource source) {
+    log.info("{}: start writeBack", source.getName());
+    String jobName = WRITE_BACK_JOB + ":" + source.getName();
+    Path tempPath = null;
+    try (StagedWorkbook stagedWorkbook = workbookStagingService.stage(source)) {
+      Path targetDir = Files.createDirectories(Paths.get(writeBackDir));
+      Path target = targetDir.resolve(source.getName() + ".xlsx");
+      boolean incremental = Files.isRegularFile(target) && jobCheckpointService
+          .getPosition(jobName, stagedWorkbook.getChecksum(), -1) >= 0;
+      String base = incremental ? target.toString() : stagedWorkbook.getLocalPath();
+      Map<String, String[]> exported = findExported(source);
+
+      Changes changes;
+      try (WorkbookSession workbookSession = new XlsService(base).openSession()) {
+        changes = findChanges(source, workbookSession, exported);
+        // a changed source is always copied, the previous copy is of the old workbook
+        if (incremental && changes.rows.isEmpty()) {
+          log.info("{}: writeBack: Nothing to write back", source.getName());
+          return 0;
+        }
+        tempPath = Files.createTempFile(targetDir, source.getName() + "-", ".tmp");
+        workbookSession.copyWorkbook(source.getOrderSheetName(), tempPath,
+            new SheetCellRewriter(changes::cellsOfRow));
+      }
+      Files.move(tempPath, target, ATOMIC_MOVE, REPLACE_EXISTING);
+      int rowsChanged = changes.rows.size();
+      jobCheckpointService.savePosition(jobName, rowsChanged, stagedWorkbook.getChecksum());
+      log.info("{}: {} rows written back to {}{}", source.getName(), rowsChanged, target,
+          incremental ? "" : ", full copy");
+      return rowsChanged;
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          source.getName() + ": write back failed: " + e.getMessage(), e);
+    } finally {
+      deleteQuietly(tempPath);
+    }
+  }
+
+  /**
+   * Order ids and statuses of the exported rows of the source by their qualified pp_num.
+   */
+  private Map<String, String[]> findExported(ExportSource source) {
+    String prefix = source.getPpNumPrefix();
+    StringBuilder sql = new StringBuilder(SELECT_DELIVERY_DATA_SQL);
+    List<Object> args = new ArrayList<>();
+    args.add(likePrefix(prefix));
+    for (ExportSource other : exportSourcesProperties.getExportSources()) {
+      String otherPrefix = other.getPpNumPrefix();
+      if (otherPrefix.length() > prefix.length() && otherPrefix.startsWith(prefix)) {
+        sql.append(EXCLUDE_PREFIX_SQL);
+        args.add(likePrefix(otherPrefix));
+      }
+    }
+    sql.append(ORDER_BY_SQL);
+    Map<String, Set<String>> orderIds = new HashMap<>();
+    Map<String, Set<String>> statuses = new HashMap<>();
+    jdbcTemplate.query(sql.toString(), rs -> {
+      String ppNum = rs.getString(1);
+      orderIds.computeIfAbsent(ppNum, k -> new LinkedHashSet<>()).add(rs.getString(2));
+      String status = rs.getString(3);
+      Set<String> rowStatuses = statuses.computeIfAbsent(ppNum, k -> new LinkedHashSet<>());
+      if (status != null) {
+        rowStatuses.add(status);
+      }
+    }, args.toArray());
+    Map<String, String[]> exported = new HashMap<>(orderIds.size() * 2);
+    orderIds.forEach((ppNum, ids) -> exported.put(ppNum, new String[]{
+        String.join(SEPARATOR, ids), String.join(SEPARATOR, statuses.get(ppNum))}));
+    return exported;
+  }
+
+  private Changes findChanges(ExportSource source, WorkbookSession workbookSession,
+      Map<String, String[]> exported) {
+    Changes changes = new Changes();
+    workbookSession.processSheet(source.getOrderSheetName(), 0, source.getOrderHeaderRowNum(),
+        new ExcelRowContentCollback() {
+          @Override
+          public void processRow(int rowNum, SheetRow row, List<SheetRow> data) {
+            String[] values = exported.get(orderService.getPpNum(source, row));
+            if (values == null) {
+              return;
+            }
+            changes.orderIdColumn = column(row, ORDER_ID);
+            changes.deliveryStatusColumn = column(row, DELIVERY_STATUS);
+            String orderIds = nullToEmpty(row.get(changes.orderIdColumn));
+            String statuses = nullToEmpty(row.get(changes.deliveryStatusColumn));
+            if (!Objects.equals(orderIds, values[0]) || !Objects.equals(statuses, values[1])) {
+              changes.rows.put(rowNum, values);
+            }
+          }
+        });
+    return changes;
+  }
+
+  /**
+   * Escapes the LIKE wildcards of SQL Server and H2, so the prefix only matches itself.
+   */
+  private static String likePrefix(String prefix) {
+    return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+        .replace("[", "\\[") + "%";
+  }
+
+  private static int column(SheetRow row, String name) {
+    int column = row.getSchema().columnOf(name);
+    if (column < 0) {
+      throw new IllegalStateException("the order sheet has no " + name + " column");
+    }
+    return column;
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  private static void deleteQuietly(Path path) {
+    if (path == null) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      log.warn("{} not deleted: {}", path, e.getMessage());
+    }
+  }
+
+  /**
+   * Exported values of the changed rows by row number; both cells of a changed row are written.
+   */
+  private static final class Changes {
+
+    final Map<Integer, String[]> rows = new HashMap<>();
+    int orderIdColumn;
+    int deliveryStatusColumn;
+
+    SortedMap<Integer, String> cellsOfRow(int rowNum) {
+      String[] values = rows.get(rowNum);
+      if (values == null) {
+        return null;
+      }
+      SortedMap<Integer, String> cells = new TreeMap<>();
+      cells.put(orderIdColumn, values[0]);
+      cells.put(deliveryStatusColumn, values[1]);
+      return cells;
+    }
+  }
+}
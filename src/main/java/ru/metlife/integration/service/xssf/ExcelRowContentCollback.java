@@ -1,10 +1,16 @@
 package ru.metlife.integration.service.xssf;
 
 import java.util.List;
-import java.util.Map;
 
 public interface ExcelRowContentCollback {
 
-  void processRow(int rowNum, Map<String, String> mapData, List<Map<String, String>> data);
+  void processRow(int rowNum, SheetRow row, List<SheetRow> data);
+
+  /**
+   * Last row number of the sheet as declared by its {@code dimension} element, reported before
+   * the first row. Not called when the sheet has no dimension.
+   */
+  default void sheetDimension(int lastRowNum) {
+  }
 
 }
@@ -1,49 +1,109 @@
 package ru.metlife.integration.service.xssf;
 
-import static java.lang.String.valueOf;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
-import static ru.metlife.integration.util.CommonUtils.getOrderIndependentHash;
 import static ru.metlife.integration.util.CommonUtils.getStringCellValue;
 
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import ru.metlife.integration.dto.RecipientDto;
-import ru.metlife.integration.service.DeliveryDataService;
+import ru.metlife.integration.service.DictionaryIndex;
 import ru.metlife.integration.service.DictionaryService;
-import ru.metlife.integration.service.xssf.XlsService.SheetData;
+import ru.metlife.integration.service.ExportMetrics;
+import ru.metlife.integration.service.ExportProgress;
 
+/**
+ * Passes on the order rows to export. Every skipped row is counted under
+ * {@code export.rows.filtered.<reason>}. Reports its position to the {@link ExportProgress} of
+ * the run and stops the parse once the run is cancelled.
+ */
 public class OrderRowContentCallback implements ExcelRowContentCollback {
 
+  private static final String ROWS_READ = "export.rows.read";
+  private static final String ROWS_FILTERED = "export.rows.filtered.";
+
   private DictionaryService dictionaryService;
-  private DeliveryDataService deliveryDataService;
-  private SheetData dictionarySheetData;
+  private Predicate<SheetRow> exported;
+  private DictionaryIndex dictionaryIndex;
+  private int lastExportedRowNum;
+  private Consumer<SheetRow> rowConsumer;
+  private ExportMetrics exportMetrics;
+  private ExportProgress exportProgress;
 
   public OrderRowContentCallback(DictionaryService dictionaryService,
-      DeliveryDataService deliveryDataService) {
+      Predicate<SheetRow> exported, DictionaryIndex dictionaryIndex, int lastExportedRowNum,
+      Consumer<SheetRow> rowConsumer, ExportMetrics exportMetrics,
+      ExportProgress exportProgress) {
     this.dictionaryService = dictionaryService;
-    this.deliveryDataService = deliveryDataService;
-    dictionarySheetData = dictionaryService.processSheet();
+    this.exported = exported;
+    this.dictionaryIndex = dictionaryIndex;
+    this.lastExportedRowNum = lastExportedRowNum;
+    this.rowConsumer = rowConsumer;
+    this.exportMetrics = exportMetrics;
+    this.exportProgress = exportProgress;
+  }
+
+  @Override
+  public void sheetDimension(int lastRowNum) {
+    exportProgress.sheetDimension(lastRowNum);
   }
 
   @Override
-  public void processRow(int rowNum, Map<String, String> mapData, List<Map<String, String>> data) {
-    String polNum = getStringCellValue(mapData, "Номер сертификата");
-    String dealership = getStringCellValue(mapData, "Дилерский центр");
-    String partner = getStringCellValue(mapData, "Партнер");
-    String region = getStringCellValue(mapData, "Region");
-    String ppNum = getStringCellValue(mapData, "№ п/п");
+  public void processRow(int rowNum, SheetRow row, List<SheetRow> data) {
+    exportProgress.checkNotCancelled();
+    exportProgress.rowRead(rowNum);
+    exportMetrics.increment(ROWS_READ);
+    String filteredBy = filter(rowNum, row);
+    if (filteredBy == null) {
+      rowConsumer.accept(row.copy());
+    } else {
+      exportMetrics.increment(ROWS_FILTERED + filteredBy);
+    }
+  }
+
+  /**
+   * Returns the reason the row is not exported, {@code null} if it is. The recipients are looked
+   * up last, most rows of a workbook are already exported.
+   */
+  private String filter(int rowNum, SheetRow row) {
+    if (rowNum <= lastExportedRowNum) {
+      return "checkpoint";
+    }
+    Columns columns = row.getSchema().compiled(Columns.class, Columns::new);
+    String polNum = getStringCellValue(row, columns.polNum);
+    if (!isNotBlank(polNum)) {
+      return "no_polnum";
+    }
+    if (Objects.equals("Совкомбанк", polNum)) {
+      return "excluded_polnum";
+    }
+    if (exported.test(row)) {
+      return "already_exported";
+    }
+    String dealership = getStringCellValue(row, columns.dealership);
+    String partner = getStringCellValue(row, columns.partner);
+    String region = getStringCellValue(row, columns.region);
     List<RecipientDto> recipients = dictionaryService
-        .getRecipientsFromDictionary(dictionarySheetData,
-            getOrderIndependentHash(dealership, partner, region));
-    if (!recipients.isEmpty()
-        && isNotBlank(polNum)
-        && !Objects.equals("Совкомбанк", polNum)
-        && !deliveryDataService.existsDeliveryDataByPpNum(ppNum)
-    ) {
-      mapData.put("rowNum", valueOf(rowNum));
-      data.add(new LinkedHashMap<>(mapData));
+        .getRecipientsFromDictionary(dictionaryIndex, region, partner, dealership);
+    if (recipients.isEmpty()) {
+      return "no_recipients";
+    }
+    return null;
+  }
+
+  private static final class Columns {
+
+    final int polNum;
+    final int dealership;
+    final int partner;
+    final int region;
+
+    Columns(SheetSchema schema) {
+      polNum = schema.columnOf("Номер сертификата");
+      dealership = schema.columnOf("Дилерский центр");
+      partner = schema.columnOf("Партнер");
+      region = schema.columnOf("Region");
     }
   }
 }
@@ -0,0 +1,156 @@
+package ru.metlife.integration.service.xssf;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apache.poi.ss.util.CellReference;
+
+/**
+ * Streams a worksheet part to a copy, replacing the cells returned for a row by inline string
+ * cells that keep the style of the cell they replace. All other events are copied one by one,
+ * so memory does not grow with the sheet. The {@code spans} hint of a changed row is dropped,
+ * as a new cell may lie outside of it.
+ */
+public class SheetCellRewriter {
+
+  private static final QName REF = new QName("r");
+  private static final QName STYLE = new QName("s");
+  private static final QName SPANS = new QName("spans");
+
+  private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+  private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+  static {
+    INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
+  private final IntFunction<SortedMap<Integer, String>> cellsOfRow;
+
+  /**
+   * @param cellsOfRow new values by column index of a zero based row, {@code null} to keep the
+   *     row as it is
+   */
+  public SheetCellRewriter(IntFunction<SortedMap<Integer, String>> cellsOfRow) {
+    this.cellsOfRow = cellsOfRow;
+  }
+
+  void rewrite(InputStream in, OutputStream out) throws XMLStreamException {
+    XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(in);
+    XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(out, "UTF-8");
+    TreeMap<Integer, String> pending = null;
+    int rowNum = -1;
+    int column = -1;
+    while (reader.hasNext()) {
+      XMLEvent event = reader.nextEvent();
+      if (event.isStartElement()) {
+        StartElement element = event.asStartElement();
+        String name = element.getName().getLocalPart();
+        if ("row".equals(name)) {
+          Attribute ref = element.getAttributeByName(REF);
+          rowNum = ref == null ? rowNum + 1 : Integer.parseInt(ref.getValue()) - 1;
+          column = -1;
+          SortedMap<Integer, String> cells = cellsOfRow.apply(rowNum);
+          pending = cells == null || cells.isEmpty() ? null : new TreeMap<>(cells);
+          if (pending != null) {
+            event = withoutSpans(element);
+          }
+        } else if ("c".equals(name) && pending != null) {
+          Attribute ref = element.getAttributeByName(REF);
+          column = ref == null ? column + 1 : SheetSchema.columnIndex(ref.getValue());
+          writeCells(writer, element.getName(), rowNum, pending.headMap(column), null);
+          String value = pending.remove(column);
+          if (value != null) {
+            writeCell(writer, element.getName(), rowNum, column, value,
+                element.getAttributeByName(STYLE));
+            skipElement(reader);
+            continue;
+          }
+        }
+      } else if (event.isEndElement() && pending != null
+          && "row".equals(event.asEndElement().getName().getLocalPart())) {
+        writeCells(writer, event.asEndElement().getName(), rowNum, pending, null);
+        pending = null;
+      }
+      writer.add(event);
+    }
+    writer.flush();
+  }
+
+  private static StartElement withoutSpans(StartElement row) {
+    List<Attribute> attributes = new ArrayList<>();
+    for (Iterator<?> it = row.getAttributes(); it.hasNext(); ) {
+      Attribute attribute = (Attribute) it.next();
+      if (!SPANS.equals(attribute.getName())) {
+        attributes.add(attribute);
+      }
+    }
+    return EVENT_FACTORY.createStartElement(row.getName(), attributes.iterator(),
+        row.getNamespaces());
+  }
+
+  private static void writeCells(XMLEventWriter writer, QName sibling, int rowNum,
+      SortedMap<Integer, String> cells, Attribute style) throws XMLStreamException {
+    for (Entry<Integer, String> cell : cells.entrySet()) {
+      writeCell(writer, sibling, rowNum, cell.getKey(), cell.getValue(), style);
+    }
+    cells.clear();
+  }
+
+  /**
+   * Writes {@code <c r=".." t="inlineStr"><is><t>value</t></is></c>} in the namespace of the
+   * sibling row or cell.
+   */
+  private static void writeCell(XMLEventWriter writer, QName sibling, int rowNum, int column,
+      String value, Attribute style) throws XMLStreamException {
+    List<Attribute> attributes = new ArrayList<>();
+    attributes.add(EVENT_FACTORY.createAttribute(REF,
+        CellReference.convertNumToColString(column) + (rowNum + 1)));
+    if (style != null) {
+      attributes.add(style);
+    }
+    attributes.add(EVENT_FACTORY.createAttribute(new QName("t"), "inlineStr"));
+    QName cell = new QName(sibling.getNamespaceURI(), "c", sibling.getPrefix());
+    QName inlineString = new QName(sibling.getNamespaceURI(), "is", sibling.getPrefix());
+    QName text = new QName(sibling.getNamespaceURI(), "t", sibling.getPrefix());
+    writer.add(EVENT_FACTORY.createStartElement(cell, attributes.iterator(), null));
+    writer.add(EVENT_FACTORY.createStartElement(inlineString, null, null));
+    writer.add(EVENT_FACTORY.createStartElement(text, null, null));
+    writer.add(EVENT_FACTORY.createCharacters(value));
+    writer.add(EVENT_FACTORY.createEndElement(text, null));
+    writer.add(EVENT_FACTORY.createEndElement(inlineString, null));
+    writer.add(EVENT_FACTORY.createEndElement(cell, null));
+  }
+
+  /**
+   * Skips the rest of the element whose start was just read.
+   */
+  private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      XMLEvent event = reader.nextEvent();
+      if (event.isStartElement()) {
+        depth++;
+      } else if (event.isEndElement()) {
+        depth--;
+      }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package ru.metlife.integration.service.xssf;
+
+import java.util.Arrays;
+
+/**
+ * Values of one sheet row indexed by column. The parser reuses a single instance for every row
+ * of a sheet, so callbacks that keep a row beyond {@code processRow} must {@link #copy()} it.
+ */
+public class SheetRow {
+
+  private static final String[] NO_VALUES = new String[0];
+
+  private final SheetSchema schema;
+  private String[] values = NO_VALUES;
+  private int rowNum;
+  private boolean empty = true;
+
+  public SheetRow(SheetSchema schema) {
+    this.schema = schema;
+  }
+
+  private SheetRow(SheetSchema schema, String[] values, int rowNum, boolean empty) {
+    this.schema = schema;
+    this.values = values;
+    this.rowNum = rowNum;
+    this.empty = empty;
+  }
+
+  public String get(int column) {
+    return column < 0 || column >= values.length ? null : values[column];
+  }
+
+  public void set(int column, String value) {
+    if (column < 0 || column >= schema.getWidth()) {
+      return;
+    }
+    if (column >= values.length) {
+      values = Arrays.copyOf(values, schema.getWidth());
+    }
+    values[column] = value;
+    empty = false;
+  }
+
+  public int size() {
+    return values.length;
+  }
+
+  public int getRowNum() {
+    return rowNum;
+  }
+
+  public SheetSchema getSchema() {
+    return schema;
+  }
+
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  void reset(int rowNum) {
+    if (!empty) {
+      Arrays.fill(values, null);
+    }
+    this.rowNum = rowNum;
+    this.empty = true;
+  }
+
+  public SheetRow copy() {
+    return new SheetRow(schema, values.clone(), rowNum, empty);
+  }
+}
@@ -0,0 +1,66 @@
+package ru.metlife.integration.service.xssf;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Header row of a sheet compiled to column indexes. Consumers resolve the columns they need once
+ * (see {@link #compiled}) and then read {@link SheetRow} values by index.
+ */
+public class SheetSchema {
+
+  private final Map<String, Integer> columnIndex = new HashMap<>();
+  private final Map<Class<?>, Object> compiled = new ConcurrentHashMap<>();
+  private int width;
+
+  void addColumn(int column, String name) {
+    columnIndex.put(name, column);
+    width = Math.max(width, column + 1);
+  }
+
+  /**
+   * @return index of the column with the given header or -1 when there is no such column
+   */
+  public int columnOf(String name) {
+    Integer column = columnIndex.get(name);
+    return column == null ? -1 : column;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public Map<String, Integer> getColumnIndex() {
+    return unmodifiableMap(columnIndex);
+  }
+
+  /**
+   * Returns the column mapping of the given type for this schema, building it on first use.
+   */
+  public <T> T compiled(Class<T> type, Function<SheetSchema, T> compiler) {
+    return type.cast(compiled.computeIfAbsent(type, t -> compiler.apply(this)));
+  }
+
+  /**
+   * Zero based column index of a cell reference such as {@code "AB12"}, without allocating a
+   * {@link org.apache.poi.ss.util.CellReference}.
+   */
+  static int columnIndex(String cellReference) {
+    int column = 0;
+    for (int i = 0; i < cellReference.length(); i++) {
+      char c = cellReference.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        column = column * 26 + (c - 'A' + 1);
+      } else if (c >= 'a' && c <= 'z') {
+        column = column * 26 + (c - 'a' + 1);
+      } else if (c != '$') {
+        break;
+      }
+    }
+    return column - 1;
+  }
+}
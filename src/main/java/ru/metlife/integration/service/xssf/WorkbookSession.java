@@ -0,0 +1,259 @@
+package ru.metlife.integration.service.xssf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.function.IntConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+import ru.metlife.integration.service.xssf.XlsService.SheetData;
+
+/**
+ * Read-only view of a single workbook. The package is opened once and the shared strings and
+ * styles tables are parsed once, then reused by every {@link #processSheet} call until the
+ * session is closed.
+ */
+public class WorkbookSession implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+      WorkbookSession.class);
+
+  private final String docFilePath;
+  private final OPCPackage opcPackage;
+  private final XSSFReader xssfReader;
+  private final StylesTable stylesTable;
+  private final ReadOnlySharedStringsTable readOnlySharedStringsTable;
+
+  WorkbookSession(String docFilePath) {
+    this.docFilePath = docFilePath;
+    OPCPackage opened = null;
+    try {
+      opened = OPCPackage.open(docFilePath, PackageAccess.READ);
+      xssfReader = new XSSFReader(opened);
+      stylesTable = xssfReader.getStylesTable();
+      readOnlySharedStringsTable = new ReadOnlySharedStringsTable(opened);
+      opcPackage = opened;
+    } catch (IOException | SAXException | OpenXML4JException e) {
+      if (opened != null) {
+        opened.revert();
+      }
+      throw new RuntimeException(e);
+    }
+    LOGGER.debug("workbook {} opened", docFilePath);
+  }
+
+  public String getDocFilePath() {
+    return docFilePath;
+  }
+
+  /**
+   * Writes a copy of the workbook to {@code target}. Every zip entry is copied as it is except
+   * the part of the named sheet, which is streamed through the rewriter.
+   */
+  public void copyWorkbook(String sheetName, Path target, SheetCellRewriter rewriter) {
+    try (ZipFile zipFile = new ZipFile(docFilePath);
+        ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(target))) {
+      String sheetEntryName = sheetPartName(sheetName).substring(1);
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        try (InputStream in = zipFile.getInputStream(entry)) {
+          if (entry.getName().equals(sheetEntryName)) {
+            rewriter.rewrite(in, out);
+          } else {
+            copy(in, out);
+          }
+        }
+        out.closeEntry();
+      }
+    } catch (IOException | XMLStreamException | OpenXML4JException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private String sheetPartName(String sheetName) throws IOException, OpenXML4JException {
+    XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader
+        .getSheetsData();
+    while (sheetIterator.hasNext()) {
+      try (InputStream ignored = sheetIterator.next()) {
+        if (sheetName.equals(sheetIterator.getSheetName())) {
+          return sheetIterator.getSheetPart().getPartName().getName();
+        }
+      }
+    }
+    throw new IllegalArgumentException(
+        "sheet " + sheetName + " not found in " + docFilePath);
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) > 0) {
+      out.write(buffer, 0, read);
+    }
+  }
+
+  public SheetData processSheet(String sheetName, int skipRowNum,
+      int headerRowNum, ExcelRowContentCollback excelRowContentCollback) {
+    SheetData sheetData = new SheetData();
+    sheetData.setSheetName(sheetName);
+    sheetData.setHeaderRowNum(headerRowNum);
+    try {
+      XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader
+          .getSheetsData();
+      while (sheetIterator.hasNext()) {
+        try (InputStream inputStream = sheetIterator.next()) {
+          if (sheetName.equals(sheetIterator.getSheetName())) {
+            processSheet(
+                new ExcelWorkSheetHandler(sheetData, excelRowContentCollback, skipRowNum,
+                    headerRowNum),
+                inputStream, excelRowContentCollback::sheetDimension);
+          }
+        }
+      }
+      return sheetData;
+    } catch (IOException | SAXException | OpenXML4JException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  void processSheet(SheetContentsHandler sheetContentsHandler,
+      InputStream inputStream, IntConsumer dimensionListener) throws IOException, SAXException {
+    try {
+      XMLReader xmlReader = SAXHelper.newXMLReader();
+      ContentHandler xssfSheetXMLHandler = new XSSFSheetXMLHandler(
+          stylesTable,
+          null,
+          readOnlySharedStringsTable,
+          sheetContentsHandler,
+          new DataFormatter(),
+          false);
+      xmlReader.setContentHandler(new DimensionFilter(xssfSheetXMLHandler, dimensionListener));
+      xmlReader.parse(new InputSource(inputStream));
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    opcPackage.revert();
+    LOGGER.debug("workbook {} closed", docFilePath);
+  }
+
+  /**
+   * Reports the last row of the {@code dimension} element, which {@link XSSFSheetXMLHandler}
+   * ignores, and passes every event on unchanged.
+   */
+  private static class DimensionFilter extends XMLFilterImpl {
+
+    private final IntConsumer dimensionListener;
+
+    DimensionFilter(ContentHandler contentHandler, IntConsumer dimensionListener) {
+      this.dimensionListener = dimensionListener;
+      setContentHandler(contentHandler);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+        throws SAXException {
+      if ("dimension".equals(localName)) {
+        String ref = atts.getValue("ref");
+        if (ref != null) {
+          String lastCell = ref.substring(ref.indexOf(':') + 1);
+          try {
+            dimensionListener.accept(Integer.parseInt(lastCell.replaceAll("[A-Z$]", "")) - 1);
+          } catch (NumberFormatException e) {
+            LOGGER.debug("unexpected sheet dimension {}", ref);
+          }
+        }
+      }
+      super.startElement(uri, localName, qName, atts);
+    }
+  }
+
+  private static class ExcelWorkSheetHandler implements SheetContentsHandler {
+
+    SheetData sheetData;
+    ExcelRowContentCollback excelRowContentCollback;
+    private SheetRow row;
+
+    private int currentRowNum;
+    private int skipRowNum;
+    private int headerRowNum;
+    private boolean isFirstRow = true;
+
+    ExcelWorkSheetHandler(SheetData sheetData,
+        ExcelRowContentCollback excelRowContentCollback, int skipRowNum, int headerRowNum) {
+      this.sheetData = sheetData;
+      this.excelRowContentCollback = excelRowContentCollback;
+      this.skipRowNum = skipRowNum;
+      this.headerRowNum = headerRowNum;
+      this.row = new SheetRow(sheetData.getSchema());
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+      currentRowNum = rowNum;
+      row.reset(rowNum);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+      if (currentRowNum >= skipRowNum && currentRowNum != headerRowNum) {
+        if (!row.isEmpty()) {
+          if (isFirstRow) {
+            isFirstRow = false;
+            sheetData.setStartRowNum(rowNum);
+          }
+          excelRowContentCollback.processRow(rowNum, row, sheetData.getData());
+        }
+      }
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+      if (currentRowNum >= skipRowNum) {
+        int idx = SheetSchema.columnIndex(cellReference);
+        if (headerRowNum == currentRowNum) {
+          sheetData.getSchema().addColumn(idx, formattedValue);
+        } else {
+          row.set(idx, formattedValue);
+        }
+      }
+    }
+
+    @Override
+    public void endSheet() {
+      sheetData.setLastRowNum(currentRowNum);
+      sheetData.setRowCount(currentRowNum + 1);
+    }
+  }
+}
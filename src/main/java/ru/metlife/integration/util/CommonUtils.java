@@ -5,12 +5,11 @@ import static java.util.Optional.ofNullable;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
-import java.util.Arrays;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import ru.metlife.integration.service.xssf.SheetRow;
 
 public class CommonUtils {
 
@@ -18,10 +17,10 @@ public class CommonUtils {
       .compile("^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}$");
   private static final Pattern EMAIL_CC_PATTERN = Pattern.compile("(.*<)?(\\S+?)>?\\s*$");
 
-  public static String getStringCellValue(Map<String, String> sheetAsMap,
-      String cellName,
+  public static String getStringCellValue(SheetRow row,
+      int column,
       String... defaultValue) {
-    return getStringCellValue(sheetAsMap.get(cellName), defaultValue);
+    return getStringCellValue(row.get(column), defaultValue);
   }
 
   public static String getStringCellValue(String cellValue, String... defaultValue) {
@@ -62,13 +61,4 @@ public class CommonUtils {
     return VALID_EMAIL_PATTERN.matcher(email).matches();
   }
 
-  public static int getOrderIndependentHash(String... objects) {
-    if (isNull(objects)) {
-      return 0;
-    }
-    return Arrays.stream(objects)
-        .mapToInt(String::hashCode)
-        .reduce(0, (left, right) -> left ^ right);
-  }
-
 }
@@ -0,0 +1,5 @@
+create table cluster_member (
+  node_id      varchar(255) not null primary key,
+  joined_at    datetime     not null,
+  heartbeat_at datetime     not null
+);
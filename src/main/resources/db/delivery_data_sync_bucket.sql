@@ -0,0 +1,7 @@
+-- 0..255 from the last two hex digits of order_id; a status sync partition seeks a range of it.
+alter table delivery_data add sync_bucket as
+  cast(16 * ((ascii(right(order_id, 2)) - 48) % 39) + (ascii(right(order_id, 1)) - 48) % 39
+    as smallint) persisted;
+
+create index ix_delivery_data_sync_bucket on delivery_data (sync_bucket)
+  include (order_id, delivery_status);
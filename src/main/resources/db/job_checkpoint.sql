@@ -0,0 +1,6 @@
+create table job_checkpoint (
+  job_name      varchar(100) not null primary key,
+  last_position bigint       not null,
+  source_marker varchar(255) null,
+  updated_at    datetime     not null
+);
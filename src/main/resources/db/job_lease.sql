@@ -0,0 +1,7 @@
+create table job_lease (
+  lease_name varchar(100) not null primary key,
+  owner      varchar(255) null,
+  token      bigint       not null,
+  expires_at datetime     not null,
+  updated_at datetime     not null
+);
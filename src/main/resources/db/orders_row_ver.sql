@@ -0,0 +1,3 @@
+alter table orders add row_ver rowversion;
+
+create index ix_orders_row_ver on orders (row_ver);